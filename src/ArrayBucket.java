@@ -0,0 +1,200 @@
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * ArrayBucket class implements a DuplicateBucket in a circular array, so an
+ * item costs one array slot and adding at either end is amortised O(1).
+ * A bucket holding a single item, the usual case, keeps it in a field and
+ * has no array at all.
+ */
+public class ArrayBucket<AnyType> implements DuplicateBucket<AnyType>
+{
+
+    public ArrayBucket()
+    {
+        only = null;
+        items = null;
+    }
+
+    public boolean add(AnyType x)
+    {
+        if (size == 0)
+        {
+            only = x;
+        } else
+        {
+            ensureArray();
+            items[(head + size) & (items.length - 1)] = x;
+        }
+        size++;
+        modCount++;
+        return true;
+    }
+
+    public void addFirst(AnyType x)
+    {
+        if (size == 0)
+        {
+            only = x;
+        } else
+        {
+            ensureArray();
+            head = (head - 1) & (items.length - 1);
+            items[head] = x;
+        }
+        size++;
+        modCount++;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Returns the item at position idx.
+     *
+     * @throws IndexOutOfBoundsException if index is out of range.
+     */
+    public AnyType get(int idx)
+    {
+        checkIndex(idx);
+        return at(idx);
+    }
+
+    /**
+     * @throws IndexOutOfBoundsException if index1 or index2 is out of range.
+     */
+    public void remove(int index1, int index2)
+    {
+        if (index2 < index1)
+        {
+            return;
+        }
+        checkIndex(index1);
+        checkIndex(index2);
+
+        int removed = index2 - index1 + 1;
+        if (size - removed <= 1) // Back to the inline item
+        {
+            only = (removed == size) ? null : at(index1 == 0 ? size - 1 : 0);
+            items = null;
+            head = 0;
+        } else
+        {
+            int mask = items.length - 1;
+            if (index1 == 0) // Drop from the front
+            {
+                for (int i = 0; i < removed; i++)
+                {
+                    items[(head + i) & mask] = null;
+                }
+                head = (head + removed) & mask;
+            } else
+            {
+                for (int i = index2 + 1; i < size; i++) // Close the gap
+                {
+                    items[(head + i - removed) & mask] = items[(head + i) & mask];
+                }
+                for (int i = size - removed; i < size; i++)
+                {
+                    items[(head + i) & mask] = null;
+                }
+            }
+        }
+        size -= removed;
+        modCount++;
+    }
+
+    // Length of the array, or 0 while the item is inline
+    int capacity()
+    {
+        return items == null ? 0 : items.length;
+    }
+
+    public void showList()
+    {
+        for (int i = 0; i < size; i++)
+        {
+            System.out.println(at(i).toString());
+        }
+    }
+
+    public Iterator<AnyType> iterator()
+    {
+        return new ArrayBucketIterator();
+    }
+
+    private void checkIndex(int idx)
+    {
+        if (idx < 0 || idx >= size)
+        {
+            throw new IndexOutOfBoundsException("ArrayBucket index: " + idx + "; size: " + size);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private AnyType at(int idx)
+    {
+        return (AnyType) (items == null ? only : items[(head + idx) & (items.length - 1)]);
+    }
+
+    // Make room for one more item, moving the inline item into the array
+    private void ensureArray()
+    {
+        if (items == null)
+        {
+            items = new Object[INITIAL_CAPACITY];
+            items[0] = only;
+            only = null;
+            head = 0;
+        } else if (size == items.length)
+        {
+            Object[] old = items;
+            items = new Object[old.length * 2];
+            for (int i = 0; i < size; i++)
+            {
+                items[i] = old[(head + i) & (old.length - 1)];
+            }
+            head = 0;
+        }
+    }
+
+    /**
+     * This is the iterator over the bucket, from front to back.
+     */
+    private class ArrayBucketIterator implements Iterator<AnyType>
+    {
+
+        public boolean hasNext()
+        {
+            if (expectedModCount != modCount)
+            {
+                throw new ConcurrentModificationException();
+            }
+            return next < size;
+        }
+
+        public AnyType next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            return at(next++);
+        }
+
+        private int next = 0;
+        private final int expectedModCount = modCount;
+    }
+
+    // Must be a power of two
+    private static final int INITIAL_CAPACITY = 4;
+
+    private Object only; // The item when there is no array
+    private Object[] items; // Circular array of the items, or null if size <= 1
+    private int head = 0; // Index in items of the first item
+    private int size = 0;
+    private int modCount = 0;
+}
@@ -0,0 +1,99 @@
+import java.util.ArrayList;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ArrayBucketCheck runs random adds at both ends and random range removals
+ * on an ArrayBucket against an ArrayList, so the circular array wraps,
+ * grows and falls back to the inline item, and checks that its iterators
+ * fail fast.
+ *
+ * Usage: java ArrayBucketCheck [seed]
+ */
+public class ArrayBucketCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkBucket(seed);
+        checkFailFast();
+
+        System.out.println("ArrayBucket checks passed");
+    }
+
+    // Random operations against a list model
+    private static void checkBucket(long seed) {
+        Random r = new Random(seed);
+        ArrayBucket<Integer> bucket = new ArrayBucket<>();
+        List<Integer> model = new ArrayList<>();
+
+        for (int step = 0; step < 100000; step++) {
+            Integer x = step;
+            switch (r.nextInt(6)) {
+                case 0:
+                case 1:
+                    if (!model.isEmpty()) {
+                        // Drop a prefix, a suffix or a middle range, now and then everything
+                        int i1 = r.nextInt(3) == 0 ? 0 : r.nextInt(model.size());
+                        int i2 = r.nextInt(3) == 0 ? model.size() - 1 : i1 + r.nextInt(model.size() - i1);
+                        bucket.remove(i1, i2);
+                        model.subList(i1, i2 + 1).clear();
+                    }
+                    break;
+                case 2:
+                    bucket.addFirst(x);
+                    model.add(0, x);
+                    break;
+                default:
+                    check(bucket.add(x), "bucket", step, "add returned false");
+                    model.add(x);
+                    break;
+            }
+            verify(bucket, model, step);
+        }
+        System.out.println("bucket: ok");
+    }
+
+    private static void verify(ArrayBucket<Integer> bucket, List<Integer> model, int step) {
+        check(bucket.size() == model.size(), "bucket", step, "size " + bucket.size() + ", expected " + model.size());
+        for (int i = 0; i < model.size(); i++) {
+            check(bucket.get(i).equals(model.get(i)), "bucket", step, "get " + i);
+        }
+        List<Integer> items = new ArrayList<>();
+        bucket.forEach(items::add);
+        check(items.equals(model), "bucket", step, "iteration " + items);
+
+        try {
+            bucket.get(model.size());
+            check(false, "bucket", step, "get past the end");
+        } catch (IndexOutOfBoundsException ex) {
+            // Expected
+        }
+        bucket.remove(1, 0); // An empty range changes nothing
+        check(bucket.size() == model.size(), "bucket", step, "empty range removed items");
+    }
+
+    // Changing the bucket under an iterator must make the iterator fail
+    private static void checkFailFast() {
+        ArrayBucket<Integer> bucket = new ArrayBucket<>();
+        for (int i = 0; i < 10; i++) {
+            bucket.add(i);
+        }
+        Iterator<Integer> itr = bucket.iterator();
+        itr.next();
+        bucket.remove(5, 9);
+        try {
+            itr.next();
+            check(false, "fail-fast", 0, "iterator survived a remove");
+        } catch (ConcurrentModificationException ex) {
+            // Expected
+        }
+        System.out.println("fail-fast: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+}
@@ -0,0 +1,306 @@
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BatchingInserter class is an ingest front end for a StampedBinarySearchTree.
+ * Any number of producers submit items into a bounded queue; one applier
+ * thread drains it in batches and applies each batch with a single
+ * insertAll, so the tree's write lock is taken once per batch instead of
+ * once per item and lookups keep being served in between.
+ *
+ * A batch is applied when it is full or when the linger time has passed
+ * since its first item. When the queue is full, submit blocks the producer.
+ * Nothing here uses synchronized or Object.wait, so producers running on
+ * virtual threads park without pinning their carrier thread.
+ *
+ * flush queues a marker behind the items already submitted and waits for
+ * the applier to reach it, so it never depends on how racing producers
+ * interleave.
+ *
+ * If applying a batch fails, the applier stops and the items still queued
+ * are never applied; submit, offer, flush and close then throw an
+ * IllegalStateException caused by the failure. That includes a submit
+ * whose item got into the queue just as the applier stopped.
+ */
+public class BatchingInserter<AnyType extends Comparable<? super AnyType>> implements AutoCloseable
+{
+
+    /**
+     * Construct the front end and start its applier thread.
+     *
+     * @param tree the tree to insert into.
+     * @param capacity the most items that may wait in the queue.
+     * @param batchSize the most items applied at once.
+     * @param lingerMillis how long a batch may wait to fill up.
+     */
+    public BatchingInserter(StampedBinarySearchTree<AnyType> tree, int capacity, int batchSize, long lingerMillis)
+    {
+        if (capacity < 1 || batchSize < 1 || lingerMillis < 0)
+        {
+            throw new IllegalArgumentException("capacity: " + capacity + "; batchSize: " + batchSize
+                    + "; lingerMillis: " + lingerMillis);
+        }
+
+        this.tree = tree;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+
+        applier = new Thread(this::applyLoop, "BatchingInserter-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    /**
+     * Queues x for insertion, waiting while the queue is full.
+     *
+     * @param x the item to insert.
+     * @throws IllegalStateException if the inserter is closed or has failed.
+     */
+    public void submit(AnyType x) throws InterruptedException
+    {
+        checkOpen();
+        while (!queue.offer(x, CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+        {
+            checkFailed(); // Nobody is draining the queue any more
+        }
+        checkFailed(); // Queued behind a failure, x will not be applied
+    }
+
+    /**
+     * Queues x for insertion, waiting at most the given time for room.
+     *
+     * @param x the item to insert.
+     * @return false if the queue stayed full.
+     * @throws IllegalStateException if the inserter is closed or has failed.
+     */
+    public boolean offer(AnyType x, long timeout, TimeUnit unit) throws InterruptedException
+    {
+        checkOpen();
+        if (!queue.offer(x, timeout, unit))
+        {
+            return false;
+        }
+        checkFailed(); // Queued behind a failure, x will not be applied
+        return true;
+    }
+
+    /**
+     * Waits until every item submitted before this call is in the tree.
+     *
+     * @throws IllegalStateException if the inserter is closed or applying a
+     * batch failed.
+     */
+    public void flush() throws InterruptedException
+    {
+        checkOpen();
+        Flush marker = new Flush();
+        while (!queue.offer(marker, CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+        {
+            checkFailed();
+        }
+
+        while (!marker.await(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS))
+        {
+            checkFailed();
+            if (!applier.isAlive())
+            {
+                throw new IllegalStateException("BatchingInserter is closed"); // Queued after the last drain
+            }
+        }
+    }
+
+    /**
+     * Stops accepting items, applies the ones still queued and stops the
+     * applier thread. Producers should have returned from submit first; an
+     * item racing with close may be rejected or left unapplied. An interrupt
+     * does not cut the wait short; it is kept for the caller to see.
+     *
+     * @throws IllegalStateException if applying a batch failed.
+     */
+    public void close()
+    {
+        closed = true;
+        boolean interrupted = false;
+        while (applier.isAlive())
+        {
+            try
+            {
+                applier.join();
+            } catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+        {
+            Thread.currentThread().interrupt();
+        }
+        checkFailed();
+    }
+
+    // Number of items waiting in the queue
+    public int queueDepth()
+    {
+        return queue.size();
+    }
+
+    public long itemsApplied()
+    {
+        return applied.get();
+    }
+
+    public long batchesApplied()
+    {
+        return batches.get();
+    }
+
+    // Mean time spent in insertAll per batch, in nanoseconds
+    public long averageApplyNanos()
+    {
+        long n = batches.get();
+        return n == 0 ? 0 : applyNanos.get() / n;
+    }
+
+    // Longest time spent in insertAll for one batch, in nanoseconds
+    public long maxApplyNanos()
+    {
+        return maxApplyNanos.get();
+    }
+
+    private void checkOpen()
+    {
+        checkFailed();
+        if (closed)
+        {
+            throw new IllegalStateException("BatchingInserter is closed");
+        }
+    }
+
+    private void checkFailed()
+    {
+        if (failure != null)
+        {
+            throw new IllegalStateException("BatchingInserter failed to apply a batch", failure);
+        }
+    }
+
+    /**
+     * Body of the applier thread: collect a batch, apply it, release the
+     * flushes queued behind it, repeat until closed and drained. A flush
+     * cuts the linger short.
+     */
+    private void applyLoop()
+    {
+        ArrayList<Object> drained = new ArrayList<>(batchSize);
+        ArrayList<AnyType> batch = new ArrayList<>(batchSize);
+        ArrayList<Flush> flushes = new ArrayList<>();
+
+        try
+        {
+            while (!closed || !queue.isEmpty())
+            {
+                Object first = queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null)
+                {
+                    continue;
+                }
+
+                take(first, batch, flushes);
+                long deadline = System.nanoTime() + lingerNanos;
+                while (flushes.isEmpty() && batch.size() < batchSize)
+                {
+                    queue.drainTo(drained, batchSize - batch.size());
+                    for (Object o : drained)
+                    {
+                        take(o, batch, flushes);
+                    }
+                    drained.clear();
+
+                    long wait = deadline - System.nanoTime();
+                    if (!flushes.isEmpty() || batch.size() >= batchSize || wait <= 0 || closed)
+                    {
+                        break;
+                    }
+                    Object next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next != null)
+                    {
+                        take(next, batch, flushes);
+                    }
+                }
+
+                if (!batch.isEmpty())
+                {
+                    apply(batch);
+                    batch.clear();
+                }
+                for (Flush marker : flushes)
+                {
+                    marker.countDown();
+                }
+                flushes.clear();
+            }
+        } catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | Error ex)
+        {
+            failure = ex; // The queue is left full so blocked producers see it
+        }
+    }
+
+    // Put something the applier drained into the batch or the flushes waiting on it
+    @SuppressWarnings("unchecked")
+    private void take(Object o, ArrayList<AnyType> batch, ArrayList<Flush> flushes)
+    {
+        if (o instanceof Flush)
+        {
+            flushes.add((Flush) o);
+        } else
+        {
+            batch.add((AnyType) o);
+        }
+    }
+
+    private void apply(ArrayList<AnyType> batch)
+    {
+        long start = System.nanoTime();
+        tree.insertAll(batch);
+        long elapsed = System.nanoTime() - start;
+
+        applyNanos.addAndGet(elapsed);
+        maxApplyNanos.accumulateAndGet(elapsed, Math::max);
+        batches.incrementAndGet();
+
+        applied.addAndGet(batch.size());
+    }
+
+    // Queued by flush; counted down once everything ahead of it is applied
+    private static final class Flush extends CountDownLatch
+    {
+
+        Flush()
+        {
+            super(1);
+        }
+    }
+
+    // How often an idle applier looks at the closed flag
+    private static final long CLOSE_CHECK_MILLIS = 50;
+
+    private final StampedBinarySearchTree<AnyType> tree;
+    private final ArrayBlockingQueue<Object> queue; // Items and flush markers
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Thread applier;
+    private volatile boolean closed = false;
+    private volatile Throwable failure = null; // What stopped the applier, if anything
+
+    private final AtomicLong applied = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong applyNanos = new AtomicLong();
+    private final AtomicLong maxApplyNanos = new AtomicLong();
+}
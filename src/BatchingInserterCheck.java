@@ -0,0 +1,167 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BatchingInserterCheck runs producers that submit and flush at once and
+ * checks that a flush returns only once everything its producer submitted
+ * before it is in the tree. It then makes the applier fail and checks that
+ * flush, submit, offer and close report the failure, including to a producer
+ * already blocked on the full queue.
+ *
+ * Usage: java BatchingInserterCheck
+ */
+public class BatchingInserterCheck {
+
+    public static void main(String[] args) throws Exception {
+        checkFlush();
+        checkFailure();
+
+        System.out.println("BatchingInserter checks passed");
+    }
+
+    // Each producer owns a key, so after its flush the tree must hold exactly what it submitted
+    private static void checkFlush() throws Exception {
+        StampedBinarySearchTree<Integer> tree = new StampedBinarySearchTree<>(true);
+        BatchingInserter<Integer> inserter = new BatchingInserter<>(tree, 64, 16, 20);
+
+        Thread[] producers = new Thread[PRODUCERS];
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int id = p;
+            producers[p] = new Thread(() -> {
+                try {
+                    for (int i = 1; i <= 5000; i++) {
+                        inserter.submit(id);
+                        if (i % 250 == 0) {
+                            inserter.flush();
+                            check(tree.numberOfDuplicates(id) == i, "flush", i,
+                                    "producer " + id + " sees " + tree.numberOfDuplicates(id) + " copies");
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+        }
+        Checks.runAll(producers);
+        inserter.close();
+
+        check(tree.numberOfElements() == PRODUCERS * 5000, "flush", 0, "numberOfElements");
+        check(inserter.itemsApplied() == PRODUCERS * 5000, "flush", 0, "itemsApplied");
+        check(inserter.queueDepth() == 0, "flush", 0, "queueDepth");
+        expectClosed("submit after close", () -> inserter.submit(0));
+        System.out.println("flush: ok, " + inserter.batchesApplied() + " batches");
+    }
+
+    // A batch that cannot be inserted stops the applier; every call waiting on it or made later must say so
+    private static void checkFailure() throws Exception {
+        StampedBinarySearchTree<Key> tree = new StampedBinarySearchTree<>(true);
+        BatchingInserter<Key> inserter = new BatchingInserter<>(tree, 4, 2, 0);
+        CountDownLatch poisoned = new CountDownLatch(1);
+
+        inserter.submit(new Key(1, null));
+        inserter.flush();
+        inserter.submit(new Key(-1, poisoned)); // Holds the applier in compareTo, then throws
+
+        // A producer that fills the queue and blocks, and a flush waiting behind its items
+        AtomicInteger accepted = new AtomicInteger();
+        Thread[] threads = new Thread[2];
+        threads[0] = new Thread(() -> {
+            try {
+                for (int i = 0; i < 100; i++) {
+                    inserter.submit(new Key(i, null));
+                    accepted.incrementAndGet();
+                }
+            } catch (IllegalStateException ex) {
+                check(ex.getCause() instanceof UnsupportedOperationException, "blocked submit", 0, "cause");
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        threads[1] = new Thread(() -> {
+            try {
+                while (accepted.get() < 3) {
+                    Thread.sleep(1);
+                }
+                expectFailed("waiting flush", inserter::flush);
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        for (Thread t : threads) {
+            t.start();
+        }
+        while (threads[0].getState() != Thread.State.TIMED_WAITING || inserter.queueDepth() < 4) {
+            Thread.sleep(1);
+        }
+        int before = accepted.get();
+        poisoned.countDown();
+        for (Thread t : threads) {
+            t.join(10000);
+            check(!t.isAlive(), "failure", 0, t.getName() + " still waiting");
+        }
+        // The producer blocked on the full queue must not return as if its item had been taken
+        check(accepted.get() == before, "failure", 0, (accepted.get() - before) + " submits returned after the failure");
+
+        expectFailed("submit", () -> inserter.submit(new Key(2, null)));
+        expectFailed("offer", () -> inserter.offer(new Key(2, null), 1, TimeUnit.MILLISECONDS));
+        expectFailed("flush", inserter::flush);
+        expectFailed("close", inserter::close);
+        check(tree.numberOfElements() == 1, "failure", 0, "numberOfElements " + tree.numberOfElements());
+        System.out.println("failure: ok");
+    }
+
+    private interface Call {
+
+        void call() throws Exception;
+    }
+
+    private static void expectFailed(String name, Call call) throws Exception {
+        try {
+            call.call();
+        } catch (IllegalStateException ex) {
+            check(ex.getCause() instanceof UnsupportedOperationException, name, 0, "cause " + ex.getCause());
+            return;
+        }
+        check(false, name, 0, "did not report the failure");
+    }
+
+    private static void expectClosed(String name, Call call) throws Exception {
+        try {
+            call.call();
+        } catch (IllegalStateException ex) {
+            return;
+        }
+        check(false, name, 0, "accepted an item");
+    }
+
+    // A key that cannot be compared when negative; comparing it first waits for its latch
+    private static final class Key implements Comparable<Key> {
+
+        Key(int value, CountDownLatch latch) {
+            this.value = value;
+            this.latch = latch;
+        }
+
+        public int compareTo(Key other) {
+            if (value < 0 || other.value < 0) {
+                try {
+                    (value < 0 ? this : other).latch.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new UnsupportedOperationException("poisoned key");
+            }
+            return Integer.compare(value, other.value);
+        }
+
+        private final int value;
+        private final CountDownLatch latch;
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int PRODUCERS = 4;
+}
@@ -1,14 +1,223 @@
-
-public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> implements Iterable<AnyType> {
 
     public BinarySearchTree() {
+        this(false);
+    }
+
+    /**
+     * Construct the tree.
+     *
+     * @param buckets creates the container for the duplicates of each new
+     * key, for instance ArrayBucket::new or LinkedList::new.
+     */
+    public BinarySearchTree(Supplier<? extends DuplicateBucket<AnyType>> buckets) {
+        this(false, false, buckets);
+    }
+
+    /**
+     * Construct the tree.
+     *
+     * @param counted if true, each node keeps its key and a count instead of
+     * a list of the duplicates, for value-equal duplicates.
+     */
+    public BinarySearchTree(boolean counted) {
+        this(counted, false);
+    }
+
+    /**
+     * Construct the tree.
+     *
+     * @param counted if true, each node keeps its key and a count instead of
+     * a list of the duplicates, for value-equal duplicates.
+     * @param striped if true, counted nodes also keep striped counters, so
+     * that insertDuplicate can add copies of a hot key from many threads.
+     * @throws IllegalArgumentException if striped but not counted.
+     */
+    public BinarySearchTree(boolean counted, boolean striped) {
+        this(counted, striped, counted ? null : ArrayBucket::new);
+    }
+
+    private BinarySearchTree(boolean counted, boolean striped, Supplier<? extends DuplicateBucket<AnyType>> buckets) {
+        if (striped && !counted) {
+            throw new IllegalArgumentException("Striped counters need counted nodes");
+        }
+        this.counted = counted;
+        this.striped = striped;
+        this.buckets = buckets;
+        this.unfolded = striped ? new LongAdder() : null;
         root = null;
     }
 
+    /**
+     * Builds a balanced tree from items in non-decreasing order in O(n).
+     * Adjacent equal items become duplicates of one node.
+     *
+     * @param items the sorted items.
+     * @param counted if true, nodes keep a count instead of a list of duplicates.
+     * @return the new tree.
+     * @throws IllegalArgumentException if the items are not sorted.
+     */
+    public static <AnyType extends Comparable<? super AnyType>> BinarySearchTree<AnyType> buildFromSorted(Iterator<? extends AnyType> items, boolean counted) {
+        BinarySearchTree<AnyType> tree = new BinarySearchTree<>(counted);
+        ArrayList<BinaryNode<AnyType>> nodes = new ArrayList<>();
+        BinaryNode<AnyType> last = null;
+
+        while (items.hasNext()) {
+            AnyType x = items.next();
+            int compareResult = (last == null) ? 1 : x.compareTo(last.key);
+
+            if (compareResult < 0) {
+                throw new IllegalArgumentException("Items are not sorted: " + x + " after " + last.key);
+            } else if (compareResult == 0) {
+                tree.addCopies(last, x, 1); //Duplicate
+            } else {
+                last = tree.newNode(x, 1);
+                nodes.add(last);
+            }
+        }
+
+        tree.root = tree.buildBalanced(nodes, 0, nodes.size() - 1);
+        return tree;
+    }
+
+    public static <AnyType extends Comparable<? super AnyType>> BinarySearchTree<AnyType> buildFromSorted(Iterator<? extends AnyType> items) {
+        return buildFromSorted(items, false);
+    }
+
+    public static <AnyType extends Comparable<? super AnyType>> BinarySearchTree<AnyType> buildFromSorted(AnyType[] items, boolean counted) {
+        return buildFromSorted(Arrays.asList(items).iterator(), counted);
+    }
+
+    public static <AnyType extends Comparable<? super AnyType>> BinarySearchTree<AnyType> buildFromSorted(AnyType[] items) {
+        return buildFromSorted(items, false);
+    }
+
     public void insert(AnyType x) throws LinkedList.NoSuchElementException {
         root = insert(x, root);
     }
 
+    /**
+     * Inserts a batch of items. The batch is sorted and equal items are
+     * grouped, then either each group is added with one descent or, for
+     * batches large relative to the tree, the groups are merged with the
+     * nodes of the tree in order and the tree is rebuilt balanced in
+     * O(n + m).
+     *
+     * @param items the items to insert.
+     */
+    @SuppressWarnings("unchecked")
+    public void insertAll(Collection<? extends AnyType> items) {
+        AnyType[] batch = (AnyType[]) items.toArray(new Comparable<?>[0]);
+        Arrays.sort(batch);
+        insertSorted(batch);
+    }
+
+    /**
+     * Inserts a batch of items; the array itself is left untouched.
+     *
+     * @param items the items to insert.
+     */
+    public void insertAll(AnyType[] items) {
+        AnyType[] batch = items.clone();
+        Arrays.sort(batch);
+        insertSorted(batch);
+    }
+
+    /**
+     * Returns a new balanced tree holding the items of both trees; the
+     * copies of a key in each tree are added together.
+     *
+     * @param other the tree to combine with.
+     * @return the multiset union.
+     */
+    public BinarySearchTree<AnyType> union(BinarySearchTree<AnyType> other) {
+        return combine(other, SetOperation.UNION);
+    }
+
+    /**
+     * Returns a new balanced tree holding the keys present in both trees,
+     * each with the smaller of its two numbers of copies.
+     *
+     * @param other the tree to combine with.
+     * @return the multiset intersection.
+     */
+    public BinarySearchTree<AnyType> intersection(BinarySearchTree<AnyType> other) {
+        return combine(other, SetOperation.INTERSECTION);
+    }
+
+    /**
+     * Returns a new balanced tree holding the items of this tree minus
+     * those of other; keys left with no copies are dropped.
+     *
+     * @param other the tree to subtract.
+     * @return the multiset difference.
+     */
+    public BinarySearchTree<AnyType> difference(BinarySearchTree<AnyType> other) {
+        return combine(other, SetOperation.DIFFERENCE);
+    }
+
+    /**
+     * Adds a copy of x if x is already in the tree, as an increment of the
+     * striped counter of its node. Nothing else in the tree is written, so
+     * any number of threads may call this at once, together with lookups,
+     * as long as no other change runs meanwhile. numberOfElements counts
+     * these copies at once; the subtree totals behind rank, select and
+     * countInRange catch up with them when a later change passes through
+     * the node, or on foldStripes.
+     *
+     * @param x the item to insert.
+     * @return false if x is not in the tree; it must then be inserted.
+     * @throws IllegalStateException if the tree is not striped.
+     */
+    public boolean insertDuplicate(AnyType x) {
+        LongAdder stripes = stripesOf(x);
+        if (stripes == null) {
+            return false;
+        }
+        stripes.increment(); //Duplicate
+        unfolded.increment();
+        return true;
+    }
+
+    /**
+     * Moves every striped copy into its node's count and brings all the
+     * subtree totals up to date.
+     */
+    public void foldStripes() {
+        foldStripes(root);
+    }
+
+    /**
+     * Returns the striped counter of the node holding x, or null if x is
+     * not in the tree.
+     *
+     * @throws IllegalStateException if the tree is not striped.
+     */
+    LongAdder stripesOf(AnyType x) {
+        if (!striped) {
+            throw new IllegalStateException("Tree has no striped counters");
+        }
+        BinaryNode<AnyType> t = find(x, root);
+        return t == null ? null : t.stripes;
+    }
+
     public void remove(AnyType x) throws ItemNotFoundException, LinkedList.NoSuchElementException {
         root = remove(x, root);
     }
@@ -17,35 +226,334 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
         root = removeMin(root);
     }
 
-    public AnyType findMin() throws LinkedList.NoSuchElementException {
+    public AnyType findMin() {
         return elementAt(findMin(root));
     }
 
-    public AnyType findMax() throws LinkedList.NoSuchElementException {
+    public AnyType findMax() {
         return elementAt(findMax(root));
     }
 
-    public AnyType find(AnyType x) throws LinkedList.NoSuchElementException {
+    public AnyType find(AnyType x) {
         return elementAt(find(x, root));
     }
 
     public void makeEmpty() {
         root = null;
+        if (unfolded != null) {
+            unfolded.reset();
+        }
+        modCount++;
     }
 
     public boolean isEmpty() {
         return root == null;
     }
 
+    /**
+     * Returns the number of items in the tree, counting duplicates.
+     *
+     * @return the number of items in the tree.
+     */
+    public int numberOfElements() {
+        return unfolded == null ? total(root) : total(root) + (int) unfolded.sum();
+    }
+
+    /**
+     * Returns the number of distinct items in the tree.
+     *
+     * @return the number of nodes in the tree.
+     */
+    public int numberOfDistinctElements() {
+        return size(root);
+    }
+
+    /**
+     * Returns the number of distinct items that have duplicates.
+     *
+     * @return the number of nodes holding more than one copy.
+     */
+    public int numberOfDuplicatedElements() {
+        return striped ? collectElements(true).size() : duplicated(root);
+    }
+
+    /**
+     * Checks the AVL balance, the key order, the subtree summaries and that
+     * every bucket holds only copies of its key, for BinarySearchTreeCheck.
+     * In striped mode the summaries only hold once the stripes are folded.
+     *
+     * @throws IllegalStateException naming the first broken node.
+     */
+    void checkInvariants() {
+        checkInvariants(root, null, null);
+    }
+
+    /**
+     * Internal method to check a subtree whose keys must lie between lo
+     * and hi, exclusive; null for no bound.
+     *
+     * @return the height of the subtree.
+     */
+    private int checkInvariants(BinaryNode<AnyType> t, AnyType lo, AnyType hi) {
+        if (t == null) {
+            return -1;
+        }
+        if ((lo != null && t.key.compareTo(lo) <= 0) || (hi != null && t.key.compareTo(hi) >= 0)) {
+            throw new IllegalStateException("Key out of order: " + t.key);
+        }
+        if (count(t) == 0) {
+            throw new IllegalStateException("Node without copies: " + t.key);
+        }
+        if (t.element != null) {
+            for (AnyType x : t.element) {
+                if (x.compareTo(t.key) != 0) {
+                    throw new IllegalStateException("Node " + t.key + " holds " + x);
+                }
+            }
+        }
+
+        int left = checkInvariants(t.left, lo, t.key);
+        int right = checkInvariants(t.right, t.key, hi);
+        if (Math.abs(left - right) > ALLOWED_IMBALANCE || t.height != Math.max(left, right) + 1) {
+            throw new IllegalStateException("Unbalanced or wrong height at " + t.key);
+        }
+        if (t.size != size(t.left) + size(t.right) + 1
+                || t.total != total(t.left) + total(t.right) + count(t)
+                || t.duplicated != duplicated(t.left) + duplicated(t.right) + (count(t) > 1 ? 1 : 0)) {
+            throw new IllegalStateException("Stale summaries at " + t.key);
+        }
+        return t.height;
+    }
+
+    /**
+     * Measures the shape of the tree, the number of copies per key and the
+     * heap it retains, in one pass without recursion.
+     *
+     * @return the report.
+     */
+    public TreeFootprint footprint() {
+        TreeFootprint report = new TreeFootprint(height(root));
+        @SuppressWarnings("unchecked")
+        BinaryNode<AnyType>[] stack = (BinaryNode<AnyType>[]) new BinaryNode<?>[height(root) + 2];
+        int[] depths = new int[stack.length];
+        int top = 0;
+
+        if (root != null) {
+            stack[top++] = root;
+        }
+        while (top > 0) {
+            BinaryNode<AnyType> t = stack[--top];
+            int depth = depths[top];
+            report.add(t.key, t.element, t.stripes != null, count(t), depth);
+
+            if (t.right != null) {
+                stack[top] = t.right;
+                depths[top++] = depth + 1;
+            }
+            if (t.left != null) {
+                stack[top] = t.left;
+                depths[top++] = depth + 1;
+            }
+        }
+        return report;
+    }
+
+    /**
+     * Returns the number of items smaller than x, counting duplicates.
+     *
+     * @param x the item to rank.
+     * @return the number of items smaller than x.
+     */
+    public int rank(AnyType x) {
+        return countLess(x, false);
+    }
+
+    /**
+     * Returns the k-th smallest item, counting duplicates.
+     *
+     * @param k the position of the item, starting from 0.
+     * @return the k-th smallest item.
+     * @throws IndexOutOfBoundsException if k is not between 0 and the
+     * number of items minus one, inclusive.
+     */
+    public AnyType select(int k) {
+        if (k < 0 || k >= total(root)) {
+            throw new IndexOutOfBoundsException("select index: " + k + "; size: " + total(root));
+        }
+
+        BinaryNode<AnyType> t = root;
+        while (true) {
+            int leftTotal = total(t.left);
+
+            if (k < leftTotal) {
+                t = t.left;
+            } else if (k < leftTotal + count(t)) {
+                return t.key; // Match
+            } else {
+                k -= leftTotal + count(t);
+                t = t.right;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of items between lo and hi, counting duplicates.
+     *
+     * @param lo the smallest item of the range, inclusive.
+     * @param hi the largest item of the range, inclusive.
+     * @return the number of items in the range, or 0 if lo is larger than hi.
+     */
+    public int countInRange(AnyType lo, AnyType hi) {
+        if (lo.compareTo(hi) > 0) {
+            return 0;
+        }
+        return countLess(hi, true) - countLess(lo, false);
+    }
+
+    /**
+     * Compiles the keys and duplicate counts into a read-only copy laid
+     * out for fast lookups. Later changes to this tree do not affect it.
+     *
+     * @return the frozen copy.
+     */
+    public FrozenBinarySearchTree<AnyType> freeze() {
+        List<BinaryNode<AnyType>> nodes = new ArrayList<>(size(root));
+        collectInOrder(root, nodes);
+
+        Object[] keys = new Object[nodes.size()];
+        int[] counts = new int[nodes.size()];
+        for (int i = 0; i < keys.length; i++) {
+            BinaryNode<AnyType> t = nodes.get(i);
+            keys[i] = t.key;
+            counts[i] = count(t);
+        }
+        return new FrozenBinarySearchTree<>(keys, counts);
+    }
+
+    /**
+     * Obtains an Iterator object used to traverse the tree in order,
+     * returning every duplicate.
+     *
+     * @return an iterator positioned prior to the smallest item.
+     */
+    public Iterator<AnyType> iterator() {
+        return new TreeIterator(null, false, null, false, false, true);
+    }
+
+    /**
+     * Obtains an Iterator object used to traverse the tree in reverse
+     * order, returning every duplicate.
+     *
+     * @return an iterator positioned prior to the largest item.
+     */
+    public Iterator<AnyType> descendingIterator() {
+        return new TreeIterator(null, false, null, false, true, true);
+    }
+
+    /**
+     * Creates a Spliterator over the tree in order, returning every
+     * duplicate. It splits along subtrees and knows its exact size, unless
+     * the tree is striped and copies may be waiting in the counters.
+     *
+     * @return a Spliterator over the items of the tree.
+     */
+    public Spliterator<AnyType> spliterator() {
+        return spliterator(true);
+    }
+
+    /**
+     * Creates a Spliterator over the tree in order.
+     *
+     * @param withDuplicates if true, return every copy, otherwise each key once.
+     * @return a Spliterator over the items of the tree.
+     */
+    public Spliterator<AnyType> spliterator(boolean withDuplicates) {
+        return new TreeSpliterator(0, size(root), withDuplicates);
+    }
+
+    /**
+     * Returns a sequential Stream over the tree in order, with every duplicate.
+     */
+    public Stream<AnyType> stream() {
+        return StreamSupport.stream(spliterator(true), false);
+    }
+
+    /**
+     * Returns a possibly parallel Stream over the tree, with every duplicate.
+     */
+    public Stream<AnyType> parallelStream() {
+        return StreamSupport.stream(spliterator(true), true);
+    }
+
+    /**
+     * Returns a Stream over the tree in order.
+     *
+     * @param withDuplicates if true, return every copy, otherwise each key once.
+     * @param parallel if true, the stream may be split across threads.
+     * @return a Stream over the items of the tree.
+     */
+    public Stream<AnyType> stream(boolean withDuplicates, boolean parallel) {
+        return StreamSupport.stream(spliterator(withDuplicates), parallel);
+    }
+
+    /**
+     * Returns a view of the items from lo to hi. The view is not copied;
+     * its iterators walk the tree lazily.
+     *
+     * @param lo the low end of the range, or null for no low end.
+     * @param loInclusive true if lo belongs to the view.
+     * @param hi the high end of the range, or null for no high end.
+     * @param hiInclusive true if hi belongs to the view.
+     * @return a view of the range.
+     */
+    public RangeView subSet(AnyType lo, boolean loInclusive, AnyType hi, boolean hiInclusive) {
+        return new RangeView(lo, loInclusive, hi, hiInclusive, true);
+    }
+
+    /**
+     * Returns a view of the items from lo, inclusive, to hi, exclusive.
+     */
+    public RangeView subSet(AnyType lo, AnyType hi) {
+        return subSet(lo, true, hi, false);
+    }
+
+    /**
+     * Returns a view of the items smaller than hi.
+     */
+    public RangeView headSet(AnyType hi) {
+        return subSet(null, false, hi, false);
+    }
+
+    /**
+     * Returns a view of the items smaller than (or equal to, if inclusive) hi.
+     */
+    public RangeView headSet(AnyType hi, boolean inclusive) {
+        return subSet(null, false, hi, inclusive);
+    }
+
+    /**
+     * Returns a view of the items larger than or equal to lo.
+     */
+    public RangeView tailSet(AnyType lo) {
+        return subSet(lo, true, null, false);
+    }
+
+    /**
+     * Returns a view of the items larger than (or equal to, if inclusive) lo.
+     */
+    public RangeView tailSet(AnyType lo, boolean inclusive) {
+        return subSet(lo, inclusive, null, false);
+    }
+
     /**
      * Internal method to get element field.
      *
      * @param t the node.
      * @return the element field or null if t is null.
      */
-    private AnyType elementAt(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
+    private AnyType elementAt(BinaryNode<AnyType> t) {
 
-        return t == null ? null : new LinkedList<>(t.element).getFirst();
+        return t == null ? null : t.key;
 
     }
 
@@ -56,11 +564,14 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
      * @param t the node that roots the tree.
      * @return node containing the matched item.
      */
-    private BinaryNode<LinkedList<AnyType>> find(AnyType x, BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
-        while (t != null) {
-            if (x.compareTo(new LinkedList<>(t.element).getFirst()) < 0) {
+    private BinaryNode<AnyType> find(AnyType x, BinaryNode<AnyType> t) {
+        for (int depth = 0; t != null; depth++) {
+            checkDepth(depth);
+            int compareResult = x.compareTo(t.key);
+
+            if (compareResult < 0) {
                 t = t.left;
-            } else if (x.compareTo(new LinkedList<>(t.element).getFirst()) > 0) {
+            } else if (compareResult > 0) {
                 t = t.right;
             } else {
                 return t; // Match
@@ -70,15 +581,73 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
         return null; // Not found
     }
 
+    /**
+     * Internal method to count the items smaller than x.
+     *
+     * @param x the item to compare with.
+     * @param inclusive if true, also count the copies of x.
+     * @return the number of items smaller than (or equal to) x.
+     */
+    private int countLess(AnyType x, boolean inclusive) {
+        return countLess(x, inclusive, false);
+    }
+
+    /**
+     * Internal method to count the items or keys smaller than x.
+     *
+     * @param x the item to compare with.
+     * @param inclusive if true, also count x.
+     * @param distinct if true, count each key once instead of every copy.
+     * @return the number of items or keys smaller than (or equal to) x.
+     */
+    private int countLess(AnyType x, boolean inclusive, boolean distinct) {
+        int less = 0;
+        BinaryNode<AnyType> t = root;
+
+        for (int depth = 0; t != null; depth++) {
+            checkDepth(depth);
+            int compareResult = x.compareTo(t.key);
+            int here = distinct ? 1 : count(t);
+            int leftOf = distinct ? size(t.left) : total(t.left);
+
+            if (compareResult < 0) {
+                t = t.left;
+            } else if (compareResult > 0) {
+                less += leftOf + here;
+                t = t.right;
+            } else {
+                less += leftOf;
+                return inclusive ? less + here : less; // Match
+            }
+        }
+
+        return less;
+    }
+
+    /**
+     * Internal method to stop a lookup that has gone deeper than any AVL
+     * tree can be. That only happens to an unlocked lookup racing with a
+     * rotation, which may briefly link two nodes to each other.
+     *
+     * @param depth the number of nodes visited so far.
+     * @throws ConcurrentModificationException if depth reaches MAX_HEIGHT.
+     */
+    private static void checkDepth(int depth) {
+        if (depth >= MAX_HEIGHT) {
+            throw new ConcurrentModificationException("Lookup deeper than " + MAX_HEIGHT + " levels");
+        }
+    }
+
     /**
      * Internal method to find the smallest item in a subtree.
      *
      * @param t the node that roots the tree.
      * @return node containing the smallest item.
      */
-    protected BinaryNode<LinkedList<AnyType>> findMin(BinaryNode<LinkedList<AnyType>> t) {
+    protected BinaryNode<AnyType> findMin(BinaryNode<AnyType> t) {
         if (t != null) {
-            while (t.left != null) {
+            for (int depth = 0; t.left != null; depth++) {
+                checkDepth(depth);
                 t = t.left;
             }
         }
@@ -92,90 +661,667 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
      * @param t the node that roots the tree.
      * @return node containing the largest item.
      */
-    private BinaryNode<LinkedList<AnyType>> findMax(BinaryNode<LinkedList<AnyType>> t) {
+    private BinaryNode<AnyType> findMax(BinaryNode<AnyType> t) {
         if (t != null) {
-            while (t.right != null) {
+            for (int depth = 0; t.right != null; depth++) {
+                checkDepth(depth);
+                t = t.right;
+            }
+        }
+
+        return t;
+    }
+
+    /**
+     * Internal method to insert into a subtree.
+     * The descent is iterative and the path is rebalanced bottom-up,
+     * so no input order can overflow the stack.
+     *
+     * @param x the item to insert.
+     * @param t the node that roots the tree.
+     * @return the new root.
+     */
+    public BinaryNode<AnyType> insert(AnyType x, BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException {
+        return insert(x, 1, t);
+    }
+
+    /**
+     * Internal method to insert several copies of an item into a subtree.
+     *
+     * @param x the item to insert.
+     * @param copies the number of copies of x to insert.
+     * @param t the node that roots the tree.
+     * @return the new root.
+     */
+    private BinaryNode<AnyType> insert(AnyType x, int copies, BinaryNode<AnyType> t) {
+        modCount++;
+        if (t == null) {
+            return newNode(x, copies);
+        }
+
+        int depth = 0;
+        BinaryNode<AnyType> p = t;
+        while (true) {
+            path[depth++] = p;
+            int compareResult = x.compareTo(p.key);
+
+            if (compareResult < 0) {
+                if (p.left == null) {
+                    p.left = newNode(x, copies);
+                    break;
+                }
+                p = p.left;
+            } else if (compareResult > 0) {
+                if (p.right == null) {
+                    p.right = newNode(x, copies);
+                    break;
+                }
+                p = p.right;
+            } else {
+                addCopies(p, x, copies);  //Duplicate
+                break;
+            }
+        }
+        return rebalancePath(depth);
+    }
+
+    /**
+     * Internal method to create a leaf holding copies of x.
+     *
+     * @param x the item to store.
+     * @param copies the number of copies of x.
+     * @return the new node.
+     */
+    private BinaryNode<AnyType> newNode(AnyType x, int copies) {
+        BinaryNode<AnyType> t;
+
+        if (counted) {
+            t = new BinaryNode<>(x, null);
+            t.count = copies;
+            t.stripes = striped ? new LongAdder() : null;
+        } else {
+            DuplicateBucket<AnyType> l = buckets.get();
+            for (int i = 0; i < copies; i++) {
+                l.add(x);
+            }
+            t = new BinaryNode<>(x, l);
+        }
+        update(t);
+        return t;
+    }
+
+    /**
+     * Internal method to insert a sorted batch of items.
+     *
+     * @param batch the items in non-decreasing order.
+     */
+    private void insertSorted(AnyType[] batch) {
+        int runs = 0;
+        for (int i = 0; i < batch.length; i++) {
+            if (i == 0 || batch[i].compareTo(batch[i - 1]) != 0) {
+                runs++;
+            }
+        }
+        if (runs == 0) {
+            return;
+        }
+        modCount++;
+
+        if ((long) runs * (height(root) + 1) < size(root)) {
+            // Few keys for the size of the tree: one descent per key
+            for (int from = 0, to; from < batch.length; from = to) {
+                to = endOfRun(batch, from);
+                int depth = findPath(batch[from], root);
+
+                if (depth == 0) {
+                    root = insert(batch[from], 1, root);
+                    depth = findPath(batch[from], root);
+                    from++;
+                }
+                addRun(path[depth - 1], batch, from, to);
+                root = rebalancePath(depth);
+            }
+            return;
+        }
+
+        ArrayList<BinaryNode<AnyType>> existing = new ArrayList<>(size(root));
+        collectInOrder(root, existing);
+        ArrayList<BinaryNode<AnyType>> nodes = new ArrayList<>(existing.size() + runs);
+
+        int i = 0;
+        for (int from = 0, to; from < batch.length; from = to) {
+            to = endOfRun(batch, from);
+            while (i < existing.size() && existing.get(i).key.compareTo(batch[from]) < 0) {
+                nodes.add(existing.get(i++));
+            }
+
+            if (i < existing.size() && existing.get(i).key.compareTo(batch[from]) == 0) {
+                addRun(existing.get(i), batch, from, to); //Duplicate
+                nodes.add(existing.get(i++));
+            } else {
+                BinaryNode<AnyType> t = newNode(batch[from], 1);
+                addRun(t, batch, from + 1, to);
+                nodes.add(t);
+            }
+        }
+        while (i < existing.size()) {
+            nodes.add(existing.get(i++));
+        }
+
+        root = buildBalanced(nodes, 0, nodes.size() - 1);
+    }
+
+    /**
+     * Internal method to find the end of a run of equal items.
+     *
+     * @param batch the items in non-decreasing order.
+     * @param from the index of the first item of the run.
+     * @return the index one past the last item equal to batch[from].
+     */
+    private static <AnyType extends Comparable<? super AnyType>> int endOfRun(AnyType[] batch, int from) {
+        int to = from + 1;
+        while (to < batch.length && batch[to].compareTo(batch[from]) == 0) {
+            to++;
+        }
+        return to;
+    }
+
+    /**
+     * Internal method to add a run of equal items to the node with their key.
+     *
+     * @param t the node holding the key.
+     * @param batch the items.
+     * @param from the index of the first item to add.
+     * @param to the index one past the last item to add.
+     */
+    private void addRun(BinaryNode<AnyType> t, AnyType[] batch, int from, int to) {
+        if (t.element == null) {
+            t.count += to - from;
+            return;
+        }
+
+        for (int i = from; i < to; i++) {
+            t.element.addFirst(batch[i]);
+        }
+    }
+
+    /**
+     * Internal method to list the nodes of a subtree in key order,
+     * without recursion.
+     *
+     * @param t the node that roots the subtree.
+     * @param out the list to append the nodes to.
+     */
+    private void collectInOrder(BinaryNode<AnyType> t, List<BinaryNode<AnyType>> out) {
+        @SuppressWarnings("unchecked")
+        BinaryNode<AnyType>[] stack = (BinaryNode<AnyType>[]) new BinaryNode<?>[height(t) + 1];
+        int depth = 0;
+
+        while (t != null || depth > 0) {
+            if (t != null) {
+                stack[depth++] = t;
+                t = t.left;
+            } else {
+                t = stack[--depth];
+                out.add(t);
                 t = t.right;
             }
         }
+    }
+
+    private enum SetOperation { UNION, INTERSECTION, DIFFERENCE }
+
+    /**
+     * Internal method to combine two trees by merging their nodes in key
+     * order and building the result balanced, in O(n + m) with no descents.
+     * The result has the storage mode of this tree and shares no nodes.
+     *
+     * @param other the other operand.
+     * @param operation how to combine the copies of a key.
+     * @return the new tree.
+     */
+    private BinarySearchTree<AnyType> combine(BinarySearchTree<AnyType> other, SetOperation operation) {
+        ArrayList<BinaryNode<AnyType>> mine = new ArrayList<>(size(root));
+        ArrayList<BinaryNode<AnyType>> theirs = new ArrayList<>(size(other.root));
+        collectInOrder(root, mine);
+        collectInOrder(other.root, theirs);
+
+        BinarySearchTree<AnyType> result = new BinarySearchTree<>(counted, striped, buckets);
+        ArrayList<BinaryNode<AnyType>> nodes = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+
+        while (i < mine.size() || j < theirs.size()) {
+            int compareResult = (i == mine.size()) ? 1
+                    : (j == theirs.size()) ? -1 : mine.get(i).key.compareTo(theirs.get(j).key);
+            BinaryNode<AnyType> a = (compareResult <= 0) ? mine.get(i++) : null;
+            BinaryNode<AnyType> b = (compareResult >= 0) ? theirs.get(j++) : null;
+            int inA = (a == null) ? 0 : count(a);
+            int inB = (b == null) ? 0 : count(b);
+
+            int fromA;
+            int fromB = 0;
+            switch (operation) {
+                case UNION:
+                    fromA = inA;
+                    fromB = inB;
+                    break;
+                case INTERSECTION:
+                    fromA = Math.min(inA, inB);
+                    break;
+                default:
+                    fromA = Math.max(inA - inB, 0);
+                    break;
+            }
 
+            if (fromA + fromB > 0) {
+                BinaryNode<AnyType> t = result.newNode((a != null) ? a.key : b.key, 0);
+                appendCopies(t, a, fromA);
+                appendCopies(t, b, fromB);
+                nodes.add(t);
+            }
+        }
+
+        result.root = result.buildBalanced(nodes, 0, nodes.size() - 1);
+        return result;
+    }
+
+    /**
+     * Internal method to copy the first copies held by one node into another.
+     *
+     * @param t the node to add to.
+     * @param from the node to copy from, with the same key.
+     * @param copies the number of copies to take.
+     */
+    private void appendCopies(BinaryNode<AnyType> t, BinaryNode<AnyType> from, int copies) {
+        if (t.element == null || copies == 0) {
+            t.count += copies;
+            return;
+        }
+
+        if (from.element == null) {
+            for (int i = 0; i < copies; i++) {
+                t.element.add(from.key);
+            }
+            return;
+        }
+
+        Iterator<AnyType> itr = from.element.iterator();
+        for (int i = 0; i < copies; i++) {
+            t.element.add(itr.next());
+        }
+    }
+
+    /**
+     * Internal method to link sorted nodes into a perfectly balanced subtree.
+     *
+     * @param nodes the nodes in key order.
+     * @param low the index of the first node of the subtree.
+     * @param high the index of the last node of the subtree.
+     * @return the root of the subtree, or null if it is empty.
+     */
+    private BinaryNode<AnyType> buildBalanced(List<BinaryNode<AnyType>> nodes, int low, int high) {
+        if (low > high) {
+            return null;
+        }
+
+        int mid = (low + high) >>> 1;
+        BinaryNode<AnyType> t = nodes.get(mid);
+        t.left = buildBalanced(nodes, low, mid - 1);
+        t.right = buildBalanced(nodes, mid + 1, high);
+        update(t);
         return t;
     }
 
     /**
-     * Internal method to insert into a subtree.
-     *
-     * @param x the item to insert.
-     * @param t the node that roots the tree.
-     * @return the new root.
+     * Internal method to add duplicates of the key of node t.
+     *
+     * @param t the node holding the key.
+     * @param x the duplicate to add.
+     * @param copies the number of copies of x to add.
+     */
+    private void addCopies(BinaryNode<AnyType> t, AnyType x, int copies) {
+        if (t.element == null) {
+            t.count += copies;
+            return;
+        }
+
+        for (int i = 0; i < copies; i++) {
+            t.element.addFirst(x);
+        }
+    }
+
+    /**
+     * Internal method to get the number of copies stored in a node.
+     *
+     * @param t the node.
+     * @return the number of duplicates of the key of t.
+     */
+    private int count(BinaryNode<AnyType> t) {
+        if (t.element != null) {
+            return t.element.size();
+        }
+        return t.stripes == null ? t.count : t.count + (int) t.stripes.sum();
+    }
+
+    /**
+     * Internal method to move the striped copies of a node into its count.
+     * Only called by the thread changing the tree, when no insertDuplicate
+     * can be running.
+     *
+     * @param t the node.
+     */
+    private void fold(BinaryNode<AnyType> t) {
+        if (t.stripes != null) {
+            long copies = t.stripes.sumThenReset();
+            t.count += (int) copies;
+            unfolded.add(-copies);
+        }
+    }
+
+    /**
+     * Internal method to print all the copies stored in a node.
+     *
+     * @param t the node.
+     */
+    private void showNode(BinaryNode<AnyType> t) {
+        if (t.element != null) {
+            t.element.showList();
+            return;
+        }
+
+        for (int i = count(t); i > 0; i--) {
+            System.out.println(t.key.toString());
+        }
+    }
+
+    /**
+     * Internal method to remove minimum item from a subtree.
+     *
+     * @param t the node that roots the tree.
+     * @return the new root.
+     * @throws ItemNotFoundException if t is empty.
+     */
+    protected BinaryNode<AnyType> removeMin(BinaryNode<AnyType> t) throws ItemNotFoundException {
+        if (t == null) {
+            throw new ItemNotFoundException();
+        }
+        modCount++;
+
+        int depth = 0;
+        BinaryNode<AnyType> p = t;
+        while (p.left != null) {
+            path[depth++] = p;
+            p = p.left;
+        }
+        fold(p); // Its striped copies leave with it
+        return splice(p, depth);
+    }
+
+    /**
+     * Internal method to remove from a subtree.
+     *
+     * @param x the item to remove.
+     * @param t the node that roots the tree.
+     * @return the new root.
+     * @throws ItemNotFoundException if x is not found.
+     */
+    protected BinaryNode<AnyType> remove(AnyType x, BinaryNode<AnyType> t) throws ItemNotFoundException, LinkedList.NoSuchElementException {
+        int depth = findPath(x, t);
+
+        if (depth == 0) {
+            throw new ItemNotFoundException(x.toString());
+        }
+        return removeNode(path[depth - 1], depth - 1);
+    }
+
+    /**
+     * Internal method to record the path from the root of a subtree
+     * down to the node holding x.
+     *
+     * @param x the item to search for.
+     * @param t the node that roots the tree.
+     * @return the number of nodes recorded in path, the last one being
+     * the match, or 0 if x is not found.
+     */
+    private int findPath(AnyType x, BinaryNode<AnyType> t) {
+        int depth = 0;
+        while (t != null) {
+            path[depth++] = t;
+            int compareResult = x.compareTo(t.key);
+
+            if (compareResult == 0) {
+                return depth; // Match
+            }
+            t = compareResult < 0 ? t.left : t.right;
+        }
+
+        Arrays.fill(path, 0, depth, null);
+        return 0; // Not found
+    }
+
+    /**
+     * Internal method to unlink a node from the tree.
+     *
+     * @param p the node to unlink.
+     * @param depth the number of ancestors of p recorded in path.
+     * @return the new root.
+     */
+    private BinaryNode<AnyType> removeNode(BinaryNode<AnyType> p, int depth) {
+        modCount++;
+        fold(p); // Its striped copies leave with it
+        if (p.left != null && p.right != null) // Two children
+        {
+            path[depth++] = p;
+            BinaryNode<AnyType> min = p.right;
+            while (min.left != null) {
+                path[depth++] = min;
+                min = min.left;
+            }
+            p.key = min.key;
+            p.element = min.element;
+            p.count = min.count;
+            p.stripes = min.stripes;
+            p = min;
+        }
+        return splice(p, depth);
+    }
+
+    /**
+     * Internal method to unlink a node with at most one child.
+     *
+     * @param p the node to unlink.
+     * @param depth the number of ancestors of p recorded in path.
+     * @return the new root.
+     */
+    private BinaryNode<AnyType> splice(BinaryNode<AnyType> p, int depth) {
+        BinaryNode<AnyType> child = (p.left != null) ? p.left : p.right;
+
+        if (depth == 0) {
+            return child;
+        }
+
+        BinaryNode<AnyType> parent = path[depth - 1];
+        if (parent.left == p) {
+            parent.left = child;
+        } else {
+            parent.right = child;
+        }
+        return rebalancePath(depth);
+    }
+
+    /**
+     * Internal method to restore balance along the recorded path,
+     * from the deepest ancestor up to the subtree root.
+     *
+     * @param depth the number of nodes recorded in path.
+     * @return the new root.
+     */
+    private BinaryNode<AnyType> rebalancePath(int depth) {
+        BinaryNode<AnyType> t = null;
+
+        for (int i = depth - 1; i >= 0; i--) {
+            BinaryNode<AnyType> old = path[i];
+            t = balance(old);
+            path[i] = null;
+
+            if (i > 0) {
+                BinaryNode<AnyType> parent = path[i - 1];
+                if (parent.left == old) {
+                    parent.left = t;
+                } else {
+                    parent.right = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    private static final int ALLOWED_IMBALANCE = 1;
+
+    // An AVL tree of 2^31 nodes is less than 46 levels high; the other
+    // trees size their ancestor stacks with it too
+    static final int MAX_HEIGHT = 64;
+
+    /**
+     * Internal method to restore the AVL condition at a node whose
+     * subtrees differ in height by at most two.
+     *
+     * @param t the node that roots the subtree.
+     * @return the new root.
+     */
+    private BinaryNode<AnyType> balance(BinaryNode<AnyType> t) {
+        if (height(t.left) - height(t.right) > ALLOWED_IMBALANCE) {
+            if (height(t.left.left) >= height(t.left.right)) {
+                t = rotateWithLeftChild(t);
+            } else {
+                t = doubleWithLeftChild(t);
+            }
+        } else if (height(t.right) - height(t.left) > ALLOWED_IMBALANCE) {
+            if (height(t.right.right) >= height(t.right.left)) {
+                t = rotateWithRightChild(t);
+            } else {
+                t = doubleWithRightChild(t);
+            }
+        }
+
+        update(t);
+        return t;
+    }
+
+    /**
+     * Return the height of node t, or -1, if null.
+     */
+    private static int height(BinaryNode<?> t) {
+        return t == null ? -1 : t.height;
+    }
+
+    /**
+     * Return the number of distinct keys in subtree t.
+     */
+    private static int size(BinaryNode<?> t) {
+        return t == null ? 0 : t.size;
+    }
+
+    /**
+     * Return the number of items in subtree t, counting duplicates.
+     */
+    private static int total(BinaryNode<?> t) {
+        return t == null ? 0 : t.total;
+    }
+
+    /**
+     * Return the number of keys with duplicates in subtree t.
+     */
+    private static int duplicated(BinaryNode<?> t) {
+        return t == null ? 0 : t.duplicated;
+    }
+
+    /**
+     * Recompute the fields of t that summarise its subtree.
+     * Only called by changes, so the striped copies of t can be folded
+     * first and the totals never count a copy that unfolded also counts.
+     */
+    private void update(BinaryNode<AnyType> t) {
+        fold(t);
+        t.height = Math.max(height(t.left), height(t.right)) + 1;
+        t.size = size(t.left) + size(t.right) + 1;
+        t.total = total(t.left) + total(t.right) + count(t);
+        t.duplicated = duplicated(t.left) + duplicated(t.right) + (count(t) > 1 ? 1 : 0);
+    }
+
+    /**
+     * Rotate binary tree node with left child.
+     * Update heights, then return new root.
      */
-    public BinaryNode<LinkedList<AnyType>> insert(AnyType x, BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
-        if (t == null) {
-            LinkedList<AnyType> l = new LinkedList<>();
-            l.add(x);
-            t = new BinaryNode<>(l);
-        } else if (x.compareTo(new LinkedList<>(t.element).getFirst()) < 0) {
-            t.left = insert(x, t.left);
-        } else if (x.compareTo(new LinkedList<>(t.element).getFirst()) > 0) {
-            t.right = insert(x, t.right);
-        } else {
-            t.element.addFirst(x);  //Duplicate
+    private BinaryNode<AnyType> rotateWithLeftChild(BinaryNode<AnyType> k2) {
+        BinaryNode<AnyType> k1 = k2.left;
+        k2.left = k1.right;
+        k1.right = k2;
+        update(k2);
+        update(k1);
+        return k1;
+    }
 
-        }
-        return t;
+    /**
+     * Rotate binary tree node with right child.
+     * Update heights, then return new root.
+     */
+    private BinaryNode<AnyType> rotateWithRightChild(BinaryNode<AnyType> k1) {
+        BinaryNode<AnyType> k2 = k1.right;
+        k1.right = k2.left;
+        k2.left = k1;
+        update(k1);
+        update(k2);
+        return k2;
     }
 
     /**
-     * Internal method to remove minimum item from a subtree.
-     *
-     * @param t the node that roots the tree.
-     * @return the new root.
-     * @throws ItemNotFoundException if t is empty.
+     * Double rotate binary tree node: first left child
+     * with its right child; then node k3 with new left child.
+     * Update heights, then return new root.
      */
-    protected BinaryNode<LinkedList<AnyType>> removeMin(BinaryNode<LinkedList<AnyType>> t) throws ItemNotFoundException {
-        if (t == null) {
-            throw new ItemNotFoundException();
-        } else if (t.left != null) {
-            t.left = removeMin(t.left);
-            return t;
-        } else {
-            return t.right;
-        }
+    private BinaryNode<AnyType> doubleWithLeftChild(BinaryNode<AnyType> k3) {
+        k3.left = rotateWithRightChild(k3.left);
+        return rotateWithLeftChild(k3);
     }
 
     /**
-     * Internal method to remove from a subtree.
-     *
-     * @param x the item to remove.
-     * @param t the node that roots the tree.
-     * @return the new root.
-     * @throws ItemNotFoundException if x is not found.
+     * Double rotate binary tree node: first right child
+     * with its left child; then node k1 with new right child.
+     * Update heights, then return new root.
      */
-    protected BinaryNode<LinkedList<AnyType>> remove(AnyType x, BinaryNode<LinkedList<AnyType>> t) throws ItemNotFoundException, LinkedList.NoSuchElementException {
-        if (t == null) {
-            throw new ItemNotFoundException(x.toString());
-        }
-        if (x.compareTo(new LinkedList<>(t.element).getFirst()) < 0) {
-            t.left = remove(x, t.left);
-        } else if (x.compareTo(new LinkedList<>(t.element).getFirst()) > 0) {
-            t.right = remove(x, t.right);
-        } else if (t.left != null && t.right != null) // Two children
-        {
-            t.element = findMin(t.right).element;
-            t.right = removeMin(t.right);
-        } else {
-            t = (t.left != null) ? t.left : t.right;
-        }
-        return t;
+    private BinaryNode<AnyType> doubleWithRightChild(BinaryNode<AnyType> k1) {
+        k1.right = rotateWithLeftChild(k1.right);
+        return rotateWithRightChild(k1);
     }
 
-    public BinaryNode<LinkedList<AnyType>> root;
+    // Scratch stack of ancestors shared by the iterative insert and remove
+    @SuppressWarnings("unchecked")
+    private final BinaryNode<AnyType>[] path = (BinaryNode<AnyType>[]) new BinaryNode<?>[MAX_HEIGHT];
+
+    public BinaryNode<AnyType> root;
+
+    // True if nodes keep a count of their key instead of a list of duplicates
+    private final boolean counted;
+
+    // True if counted nodes also keep striped counters for insertDuplicate
+    private final boolean striped;
+
+    // Striped copies not yet folded into the counts, tree-wide; null if not striped
+    private final LongAdder unfolded;
+
+    // Creates the duplicate container of each new key; null if counted
+    private final Supplier<? extends DuplicateBucket<AnyType>> buckets;
+
+    // Bumped by every change, so that iterators can fail fast
+    private int modCount = 0;
 
     // Print tree rooted at current node using preorder traversal.
-    public void printPreOrder(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
+    public void printPreOrder(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException {
 
 
-        t.element.showList();//Node
+        showNode(t);//Node
 
         if (t.left != null) {
             printPreOrder(t.left); // Left
@@ -186,7 +1332,7 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
     }
 
     // Print tree rooted at current node using postorder traversal.
-    public void printPostOrder(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
+    public void printPostOrder(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException {
         if (t.left != null) // Left
         {
             printPostOrder(t.left);
@@ -195,23 +1341,23 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
         {
             printPostOrder(t.right);
         }
-        t.element.showList(); // Node
+        showNode(t); // Node
     }
 
     // Print tree rooted at current node using inorder traversal.
-    public void printInOrder(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
+    public void printInOrder(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException {
         if (t.left != null) // Left
         {
             printInOrder(t.left);
         }
-        t.element.showList(); // Node
+        showNode(t); // Node
         if (t.right != null) {
             printInOrder(t.right); // Right
         }
     }
 
     // Print tree rooted at current node using level order traversal.
-    public void printLevelOrder(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException {
+    public void printLevelOrder(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException {
         int level = 1;
 
         while (printLevel(t, level)) {
@@ -220,14 +1366,14 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
 
     }
 
-    public boolean printLevel(BinaryNode<LinkedList<AnyType>> t, int level) throws LinkedList.NoSuchElementException {
+    public boolean printLevel(BinaryNode<AnyType> t, int level) throws LinkedList.NoSuchElementException {
         //base case
         if (t == null) {
             return false;
         }
 
         if (level == 1) {
-            t.element.showList();
+            showNode(t);
             return true;
         }
 
@@ -237,142 +1383,676 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
         return left || right;
     }
 
-    public int numberOfDuplicates(AnyType x) throws LinkedList.NoSuchElementException
+    // Number of copies of x, or 0 if x is not present
+    public int numberOfDuplicates(AnyType x)
     {
-        BinaryNode<LinkedList<AnyType>> tn = find(x, root);
-        return tn.element.size();
+        BinaryNode<AnyType> tn = find(x, root);
+        return tn == null ? 0 : count(tn);
 
     }
 
     public void findAndReplaceAllDuplicates(AnyType A, AnyType B) throws LinkedList.NoSuchElementException
     {
-        BinaryNode<LinkedList<AnyType>> tn = find(A, root);
+        int depth = findPath(A, root);
+        if (depth == 0)
+        {
+            return;
+        }
 
-        int noOfDuplicates = tn.element.size();
-        if (noOfDuplicates>1)
+        BinaryNode<AnyType> tn = path[depth - 1];
+        int noOfDuplicates = count(tn);
+        if (noOfDuplicates <= 1)
         {
-            while (noOfDuplicates>0)
-            {
-                tn.element.set(tn.element.getIndex(A), B);
-                noOfDuplicates--;
-            }
+            return;
         }
+
+        // The node branches on A, so the copies move to the node of B
+        modCount++;
+        root = removeNode(tn, depth - 1);
+        root = insert(B, noOfDuplicates, root);
     }
     public void removeDuplicatesOfElement(AnyType x) throws LinkedList.NoSuchElementException
     {
-        BinaryNode<LinkedList<AnyType>> tn = find(x, root);
-        tn.element.remove(1,tn.element.size()-1);
+        int depth = findPath(x, root);
+        if (depth == 0)
+        {
+            return;
+        }
+
+        BinaryNode<AnyType> tn = path[depth - 1];
+        modCount++;
+        if (tn.element == null)
+        {
+            fold(tn);
+            tn.count = Math.min(tn.count, 1);
+        }
+        else
+        {
+            tn.element.remove(1,tn.element.size()-1);
+        }
+        root = rebalancePath(depth);
 
     }
     public void removeOneDuplicateOfElement(AnyType x) throws LinkedList.NoSuchElementException
     {
-        BinaryNode<LinkedList<AnyType>> tn = find(x, root);
-        tn.element.remove(0,0);
+        int depth = findPath(x, root);
+        if (depth == 0)
+        {
+            return;
+        }
+
+        BinaryNode<AnyType> tn = path[depth - 1];
+        modCount++;
+        if (tn.element == null)
+        {
+            fold(tn);
+            tn.count--;
+        }
+        else
+        {
+            tn.element.remove(0,0);
+        }
+
+        if (count(tn) == 0)
+        {
+            root = removeNode(tn, depth - 1); // Last copy, drop the key
+        }
+        else
+        {
+            root = rebalancePath(depth);
+        }
     }
-    public void removeAllDuplicates(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException
+    public void removeAllDuplicates(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException
     {
-
-        t.element.remove(1,t.element.size()-1);
-        if (t.left != null) // Left
+        modCount++;
+        if (striped)
         {
-            removeAllDuplicates(t.left);
+            foldStripes(t); // The trim trusts the duplicated counts
         }
+        new TrimTask(t).invoke();
 
-        if (t.right != null) {
-            removeAllDuplicates(t.right); // Right
+        // Refresh the totals of the ancestors of t
+        int depth = findPath(t.key, root);
+        if (depth > 0)
+        {
+            root = rebalancePath(depth);
         }
     }
 
-    public void printDuplicates(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException
+    private void foldStripes(BinaryNode<AnyType> t)
     {
-        BinaryNode<LinkedList<AnyType>> tn = find(t.element.getFirst(), t);
-
-        int noOfDuplicates = tn.element.size();
+        if (t == null)
+        {
+            return;
+        }
 
-        if (noOfDuplicates >1)
+        foldStripes(t.left);
+        foldStripes(t.right);
+        if (t.element == null)
         {
-            System.out.println("Element " + t.element.getFirst() + " repeated " + noOfDuplicates + " times!");
+            fold(t);
         }
+        update(t);
+    }
 
-        if (t.left != null) // Left
+    private void trimDuplicates(BinaryNode<AnyType> t)
+    {
+        if (t == null || t.duplicated == 0)
         {
-            printDuplicates(t.left);
+            return; // No duplicates below
         }
 
-        if (t.right != null) {
-            printDuplicates(t.right); // Right
+        if (t.element == null)
+        {
+            fold(t);
+            t.count = Math.min(t.count, 1);
+        }
+        else
+        {
+            t.element.remove(1,t.element.size()-1);
         }
+        trimDuplicates(t.left); // Left
+        trimDuplicates(t.right); // Right
+        update(t);
     }
 
-    int noOfTotalDuplicates = 0;
-    public int noOfDuplicates(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException
+    public void printDuplicates(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException
     {
+        if (t == null || (!striped && t.duplicated == 0))
+        {
+            return; // No duplicates below
+        }
 
-        BinaryNode<LinkedList<AnyType>> tn = find(t.element.getFirst(), t);
+        int noOfDuplicates = count(t);
 
-        int noOfDuplicates = tn.element.size();
-//        
-//        if (noOfDuplicates >=1)
-//        {
-        noOfTotalDuplicates+=noOfDuplicates;
-//        }
+        if (noOfDuplicates >1)
+        {
+            System.out.println("Element " + t.key + " repeated " + noOfDuplicates + " times!");
+        }
 
-        if (t.left != null) // Left
+        printDuplicates(t.left); // Left
+        printDuplicates(t.right); // Right
+    }
+
+    public int noOfDuplicates(BinaryNode<AnyType> t)
+    {
+        if (t == root)
         {
-            noOfDuplicates(t.left);
+            return numberOfElements();
         }
 
-        if (t.right != null) {
-            noOfDuplicates(t.right); // Right
+        int noOfDuplicates = total(t);
+        if (striped && t != null)
+        {
+            // The subtree totals miss the striped copies not yet folded
+            List<BinaryNode<AnyType>> nodes = new ArrayList<>();
+            collectInOrder(t, nodes);
+            for (BinaryNode<AnyType> n : nodes)
+            {
+                noOfDuplicates += (int) n.stripes.sum();
+            }
         }
-        return noOfTotalDuplicates;
+        return noOfDuplicates;
     }
 
 
-    public void showDuplicates(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException
+    public void showDuplicates(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException
     {
+        printDuplicates(t);
+    }
 
-        BinaryNode<LinkedList<AnyType>> tn = find(t.element.getFirst(), t);
+    public void showSingleElements(BinaryNode<AnyType> t) throws LinkedList.NoSuchElementException
+    {
+        if (t == null || (!striped && t.duplicated == t.size))
+        {
+            return; // Every key below has duplicates
+        }
 
-        int noOfDuplicates = tn.element.size();
+        int noOfDuplicates = count(t);
 
-        if (noOfDuplicates >1)
+        if (noOfDuplicates ==1)
         {
-            System.out.println("Element " + t.element.getFirst() + " repeated " + noOfDuplicates + " times!");
+            System.out.println("Element " + t.key + " repeated " + noOfDuplicates + " time!");
         }
 
-        if (t.left != null) // Left
+        showSingleElements(t.left); // Left
+        showSingleElements(t.right); // Right
+    }
+
+    /**
+     * Returns, in order, the elements that have duplicates.
+     * Large trees are walked in parallel.
+     *
+     * @return the keys holding more than one copy.
+     */
+    public List<AnyType> duplicatedElements()
+    {
+        return collectElements(true);
+    }
+
+    /**
+     * Returns, in order, the elements that have no duplicates.
+     * Large trees are walked in parallel.
+     *
+     * @return the keys holding exactly one copy.
+     */
+    public List<AnyType> singleElements()
+    {
+        return collectElements(false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<AnyType> collectElements(boolean duplicates)
+    {
+        if (striped)
         {
-            showDuplicates(t.left);
+            // The duplicated counts miss the striped copies, so look at every node
+            List<BinaryNode<AnyType>> nodes = new ArrayList<>(size(root));
+            collectInOrder(root, nodes);
+            List<AnyType> out = new ArrayList<>();
+            for (BinaryNode<AnyType> t : nodes)
+            {
+                if ((count(t) > 1) == duplicates)
+                {
+                    out.add(t.key);
+                }
+            }
+            return out;
         }
 
-        if (t.right != null) {
-            showDuplicates(t.right); // Right
+        int matches = duplicates ? duplicated(root) : size(root) - duplicated(root);
+        Object[] out = new Object[matches];
+        new CollectTask(root, duplicates, out, 0).invoke();
+        return (List<AnyType>) (List<?>) Arrays.asList(out);
+    }
+
+    // Subtrees with at most this many nodes are walked by a single task
+    private static final int PARALLEL_THRESHOLD = 1 << 13;
+
+    /**
+     * This is the fork/join task behind removeAllDuplicates. It trims the two
+     * subtrees of a large node in parallel; every node owns its bucket, so
+     * the tasks never touch the same data.
+     */
+    @SuppressWarnings("serial") // Never serialized
+    private class TrimTask extends RecursiveAction
+    {
+
+        private final BinaryNode<AnyType> t;
+
+        TrimTask(BinaryNode<AnyType> t)
+        {
+            this.t = t;
         }
 
+        protected void compute()
+        {
+            if (t == null || t.duplicated == 0)
+            {
+                return; // No duplicates below
+            }
+            if (t.size <= PARALLEL_THRESHOLD)
+            {
+                trimDuplicates(t);
+                return;
+            }
+
+            invokeAll(new TrimTask(t.left), new TrimTask(t.right));
+            if (t.element == null)
+            {
+                fold(t);
+                t.count = Math.min(t.count, 1);
+            }
+            else
+            {
+                t.element.remove(1,t.element.size()-1);
+            }
+            update(t);
+        }
     }
 
-    public void showSingleElements(BinaryNode<LinkedList<AnyType>> t) throws LinkedList.NoSuchElementException
+    /**
+     * This is the fork/join task behind duplicatedElements and
+     * singleElements. The subtree counts say how many keys of each subtree
+     * match, so every task knows where its keys go in the result array and
+     * the parts never need to be merged.
+     */
+    @SuppressWarnings("serial") // Never serialized
+    private class CollectTask extends RecursiveAction
     {
 
-        BinaryNode<LinkedList<AnyType>> tn = find(t.element.getFirst(), t);
+        private final BinaryNode<AnyType> t;
+        private final boolean duplicates;
+        private final Object[] out;
+        private final int offset;
 
-        int noOfDuplicates = tn.element.size();
+        CollectTask(BinaryNode<AnyType> t, boolean duplicates, Object[] out, int offset)
+        {
+            this.t = t;
+            this.duplicates = duplicates;
+            this.out = out;
+            this.offset = offset;
+        }
 
-        if (noOfDuplicates ==1)
+        protected void compute()
         {
-            System.out.println("Element " + t.element.getFirst() + " repeated " + noOfDuplicates + " time!");
+            if (t == null || matches(t) == 0)
+            {
+                return;
+            }
+            if (t.size <= PARALLEL_THRESHOLD)
+            {
+                collect(t, offset);
+                return;
+            }
+
+            int here = offset + matches(t.left);
+            if ((count(t) > 1) == duplicates)
+            {
+                out[here++] = t.key;
+            }
+            invokeAll(new CollectTask(t.left, duplicates, out, offset),
+                    new CollectTask(t.right, duplicates, out, here));
         }
 
-        if (t.left != null) // Left
+        private int matches(BinaryNode<AnyType> t)
         {
-            showSingleElements(t.left);
+            return duplicates ? duplicated(t) : size(t) - duplicated(t);
         }
 
-        if (t.right != null) {
-            showSingleElements(t.right); // Right
+        private int collect(BinaryNode<AnyType> t, int offset)
+        {
+            if (t == null || matches(t) == 0)
+            {
+                return offset;
+            }
+
+            offset = collect(t.left, offset);
+            if ((count(t) > 1) == duplicates)
+            {
+                out[offset++] = t.key;
+            }
+            return collect(t.right, offset);
+        }
+    }
+
+    /**
+     * A lazy view of the items of the tree within a range. Iterating it
+     * costs O(log n) to find the first item plus O(1) amortised per item.
+     */
+    public class RangeView extends AbstractCollection<AnyType> implements Iterable<AnyType> {
+
+        private final AnyType lo;
+        private final boolean loInclusive;
+        private final AnyType hi;
+        private final boolean hiInclusive;
+        private final boolean withDuplicates;
+
+        RangeView(AnyType lo, boolean loInclusive, AnyType hi, boolean hiInclusive, boolean withDuplicates) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.withDuplicates = withDuplicates;
+        }
+
+        /**
+         * Returns the same range, with each key appearing once.
+         */
+        public RangeView distinct() {
+            return new RangeView(lo, loInclusive, hi, hiInclusive, false);
+        }
+
+        public Iterator<AnyType> iterator() {
+            return new TreeIterator(lo, loInclusive, hi, hiInclusive, false, withDuplicates);
+        }
+
+        public Iterator<AnyType> descendingIterator() {
+            return new TreeIterator(lo, loInclusive, hi, hiInclusive, true, withDuplicates);
+        }
+
+        /**
+         * Returns the number of items in the view, in O(log n).
+         */
+        public int size() {
+            int upTo = hi == null ? (withDuplicates ? numberOfElements() : numberOfDistinctElements())
+                    : countLess(hi, hiInclusive, !withDuplicates);
+            int below = lo == null ? 0 : countLess(lo, !loInclusive, !withDuplicates);
+            return Math.max(upTo - below, 0);
+        }
+    }
+
+    /**
+     * This is the implementation of the in-order iterator. It keeps the
+     * ancestors still to be visited on an explicit stack, so it never
+     * recurses and only descends into the part of the tree in range.
+     */
+    private class TreeIterator implements Iterator<AnyType> {
+
+        private final AnyType lo;
+        private final boolean loInclusive;
+        private final AnyType hi;
+        private final boolean hiInclusive;
+        private final boolean descending;
+        private final boolean withDuplicates;
+
+        @SuppressWarnings("unchecked")
+        private final BinaryNode<AnyType>[] stack = (BinaryNode<AnyType>[]) new BinaryNode<?>[height(root) + 1];
+        private int depth = 0;
+
+        private BinaryNode<AnyType> current; // node whose copies are being returned
+        private Iterator<AnyType> copies; // copies of current, if it keeps a list
+        private int remaining; // copies of current still to return
+        private final int expectedModCount = modCount;
+
+        TreeIterator(AnyType lo, boolean loInclusive, AnyType hi, boolean hiInclusive,
+                boolean descending, boolean withDuplicates) {
+            this.lo = lo;
+            this.loInclusive = loInclusive;
+            this.hi = hi;
+            this.hiInclusive = hiInclusive;
+            this.descending = descending;
+            this.withDuplicates = withDuplicates;
+
+            BinaryNode<AnyType> t = root;
+            while (t != null) {
+                if (beforeStart(t.key)) {
+                    t = descending ? t.left : t.right;
+                } else {
+                    stack[depth++] = t;
+                    t = descending ? t.right : t.left;
+                }
+            }
+            advance();
+        }
+
+        private boolean belowLo(AnyType x) {
+            if (lo == null) {
+                return false;
+            }
+            int compareResult = x.compareTo(lo);
+            return loInclusive ? compareResult < 0 : compareResult <= 0;
+        }
+
+        private boolean aboveHi(AnyType x) {
+            if (hi == null) {
+                return false;
+            }
+            int compareResult = x.compareTo(hi);
+            return hiInclusive ? compareResult > 0 : compareResult >= 0;
+        }
+
+        private boolean beforeStart(AnyType x) {
+            return descending ? aboveHi(x) : belowLo(x);
+        }
+
+        private boolean afterEnd(AnyType x) {
+            return descending ? belowLo(x) : aboveHi(x);
+        }
+
+        /**
+         * Moves current to the next node in range, or to null at the end.
+         */
+        private void advance() {
+            if (depth == 0) {
+                current = null;
+                return;
+            }
+
+            BinaryNode<AnyType> t = stack[--depth];
+            stack[depth] = null;
+            for (BinaryNode<AnyType> p = descending ? t.left : t.right; p != null; p = descending ? p.right : p.left) {
+                stack[depth++] = p;
+            }
+
+            if (afterEnd(t.key)) {
+                Arrays.fill(stack, 0, depth, null);
+                depth = 0;
+                current = null;
+                return;
+            }
+
+            current = t;
+            remaining = count(t);
+            copies = (withDuplicates && t.element != null) ? t.element.iterator() : null;
+        }
+
+        public boolean hasNext() {
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            return current != null;
+        }
+
+        public AnyType next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            AnyType nextItem = copies != null ? copies.next() : current.key;
+            if (!withDuplicates || --remaining == 0) {
+                advance();
+            }
+            return nextItem;
+        }
+    }
+
+    /**
+     * Internal method to count the items held by the first keys of the tree.
+     *
+     * @param index the number of keys, in order, to count the items of.
+     * @return the number of items in those keys, counting duplicates.
+     */
+    private int totalBefore(int index) {
+        int before = 0;
+        BinaryNode<AnyType> t = root;
+
+        while (t != null) {
+            int leftSize = size(t.left);
+
+            if (index <= leftSize) {
+                t = t.left;
+            } else {
+                before += total(t.left) + count(t);
+                index -= leftSize + 1;
+                t = t.right;
+            }
+        }
+
+        return before;
+    }
+
+    /**
+     * This is the implementation of the tree Spliterator. It covers the keys
+     * whose in-order index is in [origin, fence) and splits that range in
+     * half, so every part is an exact size known from the subtree counts.
+     * Traversal seeks to origin in O(log n) and then walks like TreeIterator.
+     */
+    private class TreeSpliterator implements Spliterator<AnyType> {
+
+        private int origin; // index of the next key to return
+        private final int fence; // index one past the last key
+        private final boolean withDuplicates;
+
+        private BinaryNode<AnyType>[] stack; // null until traversal starts
+        private int depth = 0;
+        private Iterator<AnyType> copies; // copies of the current key, if it keeps a list
+        private AnyType key; // current key
+        private int remaining; // copies of the current key still to return
+        private final int expectedModCount = modCount;
+
+        TreeSpliterator(int origin, int fence, boolean withDuplicates) {
+            this.origin = origin;
+            this.fence = fence;
+            this.withDuplicates = withDuplicates;
+        }
+
+        public Spliterator<AnyType> trySplit() {
+            int mid = (origin + fence) >>> 1;
+
+            if (stack != null || remaining > 0 || mid <= origin) {
+                return null;
+            }
+
+            Spliterator<AnyType> prefix = new TreeSpliterator(origin, mid, withDuplicates);
+            origin = mid;
+            return prefix;
+        }
+
+        /**
+         * Pushes the path to the key at index origin onto the stack.
+         */
+        @SuppressWarnings("unchecked")
+        private void seek() {
+            stack = (BinaryNode<AnyType>[]) new BinaryNode<?>[height(root) + 1];
+            int index = origin;
+            BinaryNode<AnyType> t = root;
+
+            while (t != null) {
+                int leftSize = size(t.left);
+
+                if (index < leftSize) {
+                    stack[depth++] = t;
+                    t = t.left;
+                } else if (index == leftSize) {
+                    stack[depth++] = t;
+                    break;
+                } else {
+                    index -= leftSize + 1;
+                    t = t.right;
+                }
+            }
+        }
+
+        /**
+         * Moves to the next key in range.
+         *
+         * @return false if there are no more keys.
+         */
+        private boolean nextKey() {
+            if (origin >= fence || depth == 0) {
+                return false;
+            }
+
+            BinaryNode<AnyType> t = stack[--depth];
+            stack[depth] = null;
+            for (BinaryNode<AnyType> p = t.right; p != null; p = p.left) {
+                stack[depth++] = p;
+            }
+
+            origin++;
+            key = t.key;
+            remaining = withDuplicates ? count(t) : 1;
+            copies = (withDuplicates && t.element != null) ? t.element.iterator() : null;
+            return true;
+        }
+
+        public boolean tryAdvance(Consumer<? super AnyType> action) {
+            if (stack == null) {
+                seek();
+            }
+            if (remaining == 0 && !nextKey()) {
+                return false;
+            }
+
+            remaining--;
+            action.accept(copies != null ? copies.next() : key);
+
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+            return true;
+        }
+
+        public void forEachRemaining(Consumer<? super AnyType> action) {
+            if (stack == null) {
+                seek();
+            }
+            do {
+                for (; remaining > 0; remaining--) {
+                    action.accept(copies != null ? copies.next() : key);
+                }
+            } while (nextKey());
+
+            if (expectedModCount != modCount) {
+                throw new ConcurrentModificationException();
+            }
+        }
+
+        public long estimateSize() {
+            return remaining + (withDuplicates ? totalBefore(fence) - totalBefore(origin) : fence - origin);
         }
 
+        public int characteristics() {
+            // Subtree totals miss the striped copies, so the sizes are estimates
+            int sized = (striped && withDuplicates) ? 0 : Spliterator.SIZED | Spliterator.SUBSIZED;
+            return Spliterator.ORDERED | Spliterator.SORTED | Spliterator.NONNULL | sized
+                    | (withDuplicates ? 0 : Spliterator.DISTINCT);
+        }
+
+        public Comparator<? super AnyType> getComparator() {
+            return null; // Natural order
+        }
     }
 
     public static class ItemNotFoundException extends Exception {
@@ -387,20 +2067,29 @@ public class BinarySearchTree<AnyType extends Comparable<? super AnyType>> {
     }
 }
 
-// Basic node stored in unbalanced binary search trees
+// Basic node stored in AVL-balanced binary search trees
 // Note that this class is not accessible outside
 // this package.
-class BinaryNode<LinkedList> {
+class BinaryNode<AnyType extends Comparable<? super AnyType>> {
 // Constructor
 
-    BinaryNode(LinkedList theElement) {
+    BinaryNode(AnyType theKey, DuplicateBucket<AnyType> theElement) {
+        key = theKey;
         element = theElement;
         left = right = null;
+        height = 0;
     }
 
     // Data; accessible by other package routines
-    LinkedList element; // The data in the node
-    BinaryNode<LinkedList> left; // Left child
-    BinaryNode<LinkedList> right; // Right child
+    AnyType key; // The branching key, cached so descent never touches the list
+    DuplicateBucket<AnyType> element; // The duplicates in the node, or null if counted
+    int count; // Number of copies of key when element is null
+    LongAdder stripes; // Further copies added by insertDuplicate, or null
+    BinaryNode<AnyType> left; // Left child
+    BinaryNode<AnyType> right; // Right child
+    int height; // Height of the subtree rooted here
+    int size; // Number of distinct keys in the subtree rooted here
+    int total; // Number of items in the subtree rooted here, counting duplicates
+    int duplicated; // Number of keys with duplicates in the subtree rooted here
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,568 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * BinarySearchTreeCheck runs random operations on a BinarySearchTree against
+ * a TreeMap model of the counts, with the AVL, order and subtree summary
+ * invariants checked after each one, compares the iterators, range views,
+ * spliterators and streams with the model, checks the trees built from
+ * sorted input, the multiset operations, frozen copies and the footprint
+ * report, and checks that lookups do not allocate.
+ *
+ * Usage: java BinarySearchTreeCheck [seed]
+ */
+public class BinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree("list", new BinarySearchTree<>(), false, seed);
+        checkTree("linked list", new BinarySearchTree<Integer>(LinkedList::new), false, seed);
+        checkTree("counted", new BinarySearchTree<>(true), false, seed);
+        checkTree("striped", new BinarySearchTree<>(true, true), true, seed);
+        checkSortedInput();
+        checkBuildFromSorted(seed);
+        checkSetOperations(seed);
+        checkParallel(seed);
+        checkFootprint(seed);
+        checkFailFast();
+        checkAllocation();
+
+        System.out.println("BinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts
+    private static void checkTree(String name, BinarySearchTree<Integer> tree, boolean striped, long seed)
+            throws Exception {
+        Random r = new Random(seed);
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        FrozenBinarySearchTree<Integer> frozen = null;
+        TreeMap<Integer, Integer> frozenModel = null;
+
+        for (int step = 0; step < 10000; step++) {
+            Integer x = r.nextInt(KEYS);
+            Integer y = r.nextInt(KEYS);
+            boolean present = model.containsKey(x);
+
+            switch (r.nextInt(10)) {
+                case 0:
+                    try {
+                        tree.remove(x);
+                        check(present, name, step, "removed absent " + x);
+                    } catch (BinarySearchTree.ItemNotFoundException ex) {
+                        check(!present, name, step, "could not remove " + x);
+                    }
+                    model.remove(x);
+                    break;
+                case 1:
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                    break;
+                case 2:
+                    tree.removeDuplicatesOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> 1);
+                    break;
+                case 3:
+                    tree.findAndReplaceAllDuplicates(x, y);
+                    if (present && model.get(x) > 1) {
+                        model.merge(y, model.remove(x), Integer::sum);
+                    }
+                    break;
+                case 4:
+                    if (r.nextInt(50) == 0 && tree.root != null) {
+                        tree.removeAllDuplicates(tree.root);
+                        model.replaceAll((k, v) -> 1);
+                    }
+                    break;
+                case 5:
+                    // Small batches take one descent per key, large ones are merged
+                    List<Integer> batch = new ArrayList<>();
+                    for (int i = r.nextInt(8) == 0 ? r.nextInt(200) : r.nextInt(20); i > 0; i--) {
+                        batch.add(r.nextInt(KEYS));
+                    }
+                    if (r.nextBoolean()) {
+                        tree.insertAll(batch);
+                    } else {
+                        tree.insertAll(batch.toArray(new Integer[0]));
+                    }
+                    for (Integer b : batch) {
+                        model.merge(b, 1, Integer::sum);
+                    }
+                    break;
+                default:
+                    if (!striped || !tree.insertDuplicate(x)) {
+                        tree.insert(x);
+                    }
+                    model.merge(x, 1, Integer::sum);
+                    break;
+            }
+
+            verifyCounts(name, tree, model, step);
+            if (!striped || step % 10 == 0) {
+                if (striped) {
+                    tree.foldStripes(); // The summaries lag the stripes until folded
+                }
+                verifyShape(name, tree, model, step);
+                verifyRange(name, tree, model, step, r);
+            }
+            if (step % 10 == 0) {
+                verifySplit(name, tree, model, !striped, step);
+
+                // The copy frozen ten steps ago must not have seen the changes since
+                if (frozen != null) {
+                    verifyFrozen(name, frozen, frozenModel, step);
+                }
+                frozen = tree.freeze();
+                frozenModel = new TreeMap<>(model);
+                verifyFrozen(name, frozen, frozenModel, step);
+            }
+        }
+        System.out.println(name + ": ok");
+    }
+
+    private static void verifyCounts(String name, BinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model, int step)
+            throws Exception {
+        List<Integer> expected = expand(model);
+        check(toList(tree.iterator()).equals(expected), name, step, "iteration " + toList(tree.iterator()));
+        Collections.reverse(expected);
+        check(toList(tree.descendingIterator()).equals(expected), name, step, "descending iteration");
+
+        for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+            check(tree.numberOfDuplicates(e.getKey()) == e.getValue(), name, step, "numberOfDuplicates " + e.getKey());
+        }
+        for (int x = 0; x < KEYS; x++) {
+            check(model.containsKey(x) == (tree.find(x) != null), name, step, "find " + x);
+            check(model.containsKey(x) || tree.numberOfDuplicates(x) == 0, name, step, "numberOfDuplicates absent " + x);
+        }
+
+        int items = 0;
+        int duplicated = 0;
+        List<Integer> duplicatedKeys = new ArrayList<>();
+        List<Integer> singleKeys = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+            items += e.getValue();
+            duplicated += e.getValue() > 1 ? 1 : 0;
+            (e.getValue() > 1 ? duplicatedKeys : singleKeys).add(e.getKey());
+        }
+        check(tree.duplicatedElements().equals(duplicatedKeys), name, step, "duplicatedElements");
+        check(tree.singleElements().equals(singleKeys), name, step, "singleElements");
+        check(tree.numberOfElements() == items, name, step, "numberOfElements " + tree.numberOfElements());
+        check(tree.numberOfDistinctElements() == model.size(), name, step, "numberOfDistinctElements");
+        check(tree.numberOfDuplicatedElements() == duplicated, name, step, "numberOfDuplicatedElements");
+        check(tree.root == null || tree.noOfDuplicates(tree.root) == items, name, step, "noOfDuplicates");
+        if (tree.root != null) {
+            // The left subtree holds exactly the keys below the root's
+            int below = 0;
+            for (int copies : model.headMap(tree.root.key).values()) {
+                below += copies;
+            }
+            check(tree.noOfDuplicates(tree.root.left) == below, name, step, "noOfDuplicates of the left subtree");
+        }
+        check(model.isEmpty() ? tree.isEmpty() : model.firstKey().equals(tree.findMin())
+                && model.lastKey().equals(tree.findMax()), name, step, "findMin and findMax");
+    }
+
+    // AVL balance, key order, cached summaries and bucket contents, plus the order statistics
+    private static void verifyShape(String name, BinarySearchTree<Integer> tree, Map<Integer, Integer> model, int step) {
+        try {
+            tree.checkInvariants();
+        } catch (IllegalStateException ex) {
+            check(false, name, step, ex.getMessage());
+        }
+
+        int before = 0;
+        for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+            check(tree.rank(e.getKey()) == before, name, step, "rank " + e.getKey());
+            check(tree.select(before).equals(e.getKey()), name, step, "select " + before);
+            check(tree.countInRange(e.getKey(), e.getKey()) == e.getValue(), name, step, "countInRange " + e.getKey());
+            before += e.getValue();
+        }
+        check(tree.countInRange(0, KEYS) == before, name, step, "countInRange of everything");
+    }
+
+    // Every lookup of a frozen copy, for keys present, absent and beyond both ends
+    private static void verifyFrozen(String name, FrozenBinarySearchTree<Integer> frozen, TreeMap<Integer, Integer> model,
+            int step) {
+        long below = 0;
+        for (int x = -1; x <= KEYS; x++) {
+            int copies = model.getOrDefault(x, 0);
+            check(frozen.numberOfDuplicates(x) == copies, name, step, "frozen numberOfDuplicates " + x);
+            check(frozen.contains(x) == (copies > 0), name, step, "frozen contains " + x);
+            check(copies == 0 ? frozen.find(x) == null : frozen.find(x).equals(x), name, step, "frozen find " + x);
+            check(Objects.equals(frozen.floor(x), model.floorKey(x)), name, step, "frozen floor " + x);
+            check(Objects.equals(frozen.ceiling(x), model.ceilingKey(x)), name, step, "frozen ceiling " + x);
+            check(frozen.rank(x) == below, name, step, "frozen rank " + x);
+            for (int hi = x - 1; hi <= KEYS; hi += 7) {
+                long inRange = 0;
+                for (int c : model.subMap(x, true, Math.max(x, hi), true).values()) {
+                    inRange += c;
+                }
+                check(frozen.countInRange(x, hi) == (hi < x ? 0 : inRange), name, step,
+                        "frozen countInRange " + x + ".." + hi);
+            }
+            below += copies;
+        }
+        check(frozen.numberOfElements() == below, name, step, "frozen numberOfElements");
+        check(frozen.numberOfDistinctElements() == model.size(), name, step, "frozen numberOfDistinctElements");
+        check(frozen.isEmpty() == model.isEmpty(), name, step, "frozen isEmpty");
+        check(model.isEmpty() ? frozen.findMin() == null && frozen.findMax() == null
+                : model.firstKey().equals(frozen.findMin()) && model.lastKey().equals(frozen.findMax()),
+                name, step, "frozen findMin and findMax");
+    }
+
+    // A random range view, with or without its bounds and duplicates, against the same range of the model
+    private static void verifyRange(String name, BinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model,
+            int step, Random r) {
+        int lo = r.nextInt(KEYS + 2) - 1;
+        int hi = lo + r.nextInt(KEYS / 2);
+        boolean loInclusive = r.nextBoolean();
+        boolean hiInclusive = r.nextBoolean();
+
+        BinarySearchTree<Integer>.RangeView view;
+        NavigableMap<Integer, Integer> range;
+        switch (r.nextInt(3)) {
+            case 0:
+                view = tree.subSet(lo, loInclusive, hi, hiInclusive);
+                range = model.subMap(lo, loInclusive, hi, hiInclusive);
+                break;
+            case 1:
+                view = tree.headSet(hi, hiInclusive);
+                range = model.headMap(hi, hiInclusive);
+                break;
+            default:
+                view = tree.tailSet(lo, loInclusive);
+                range = model.tailMap(lo, loInclusive);
+                break;
+        }
+        if (r.nextBoolean()) {
+            view = view.distinct();
+            range = range.entrySet().stream().collect(TreeMap::new, (m, e) -> m.put(e.getKey(), 1), Map::putAll);
+        }
+
+        List<Integer> expected = expand(range);
+        check(toList(view.iterator()).equals(expected), name, step, "range view " + toList(view.iterator()));
+        check(view.size() == expected.size(), name, step, "range view size " + view.size());
+        Collections.reverse(expected);
+        check(toList(view.descendingIterator()).equals(expected), name, step, "descending range view");
+    }
+
+    // Split the spliterators all the way down: the parts must add up to the tree in order, and be exact in
+    // size unless the copies are striped
+    private static void verifySplit(String name, BinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model,
+            boolean sized, int step) {
+        List<Integer> expected = expand(model);
+        List<Integer> parts = new ArrayList<>();
+        split(name, tree.spliterator(), parts, sized, step);
+        check(parts.equals(expected), name, step, "split spliterator " + parts);
+
+        parts.clear();
+        split(name, tree.spliterator(false), parts, true, step);
+        check(parts.equals(new ArrayList<>(model.keySet())), name, step, "split distinct spliterator " + parts);
+
+        check(tree.parallelStream().collect(Collectors.toList()).equals(expected), name, step, "parallelStream");
+        check(tree.stream(false, true).count() == model.size(), name, step, "distinct parallel stream");
+    }
+
+    private static void split(String name, Spliterator<Integer> s, List<Integer> out, boolean sized, int step) {
+        check(s.hasCharacteristics(Spliterator.ORDERED | Spliterator.SORTED)
+                && s.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED) == sized,
+                name, step, "spliterator characteristics");
+        long size = s.estimateSize();
+        int before = out.size();
+
+        Spliterator<Integer> prefix = s.trySplit();
+        if (prefix == null) {
+            s.forEachRemaining(out::add);
+        } else {
+            check(!sized || prefix.estimateSize() + s.estimateSize() == size, name, step, "split sizes");
+            split(name, prefix, out, sized, step);
+            split(name, s, out, sized, step);
+        }
+        check(!sized || out.size() - before == size, name, step,
+                "estimateSize " + size + ", got " + (out.size() - before));
+    }
+
+    // Changing the tree under an iterator must make the iterator fail
+    private static void checkFailFast() throws Exception {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        for (int i = 0; i < KEYS; i++) {
+            tree.insert(i);
+        }
+
+        Iterator<Integer> itr = tree.subSet(10, 20).iterator();
+        itr.next();
+        tree.insert(15);
+        try {
+            itr.next();
+            check(false, "fail-fast", 0, "no ConcurrentModificationException");
+        } catch (ConcurrentModificationException ex) {
+            // Expected
+        }
+        System.out.println("fail-fast: ok");
+    }
+
+    // Every copy of every key of the model, in order
+    private static List<Integer> expand(Map<Integer, Integer> model) {
+        List<Integer> items = new ArrayList<>();
+        for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+            for (int i = e.getValue(); i > 0; i--) {
+                items.add(e.getKey());
+            }
+        }
+        return items;
+    }
+
+    private static List<Integer> toList(Iterator<Integer> itr) {
+        List<Integer> items = new ArrayList<>();
+        while (itr.hasNext()) {
+            items.add(itr.next());
+        }
+        return items;
+    }
+
+    // Trees built from sorted runs must be valid AVL trees that later changes keep valid
+    private static void checkBuildFromSorted(long seed) throws Exception {
+        Random r = new Random(seed);
+        for (int n = 0; n < 300; n += 1 + n / 4) {
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            for (int i = 0; i < n; i++) {
+                model.merge(r.nextInt(KEYS), 1, Integer::sum);
+            }
+            List<Integer> sorted = expand(model);
+            boolean counted = r.nextBoolean();
+            String name = "buildFromSorted " + n + (counted ? " counted" : "");
+
+            BinarySearchTree<Integer> tree = r.nextBoolean()
+                    ? BinarySearchTree.buildFromSorted(sorted.iterator(), counted)
+                    : BinarySearchTree.buildFromSorted(sorted.toArray(new Integer[0]), counted);
+            for (int step = 0; step < 20; step++) {
+                verifyCounts(name, tree, model, step);
+                verifyShape(name, tree, model, step);
+                Integer x = r.nextInt(KEYS);
+                if (r.nextBoolean()) {
+                    tree.insert(x);
+                    model.merge(x, 1, Integer::sum);
+                } else {
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                }
+            }
+        }
+
+        try {
+            BinarySearchTree.buildFromSorted(new Integer[] {1, 3, 2});
+            check(false, "buildFromSorted", 0, "unsorted input accepted");
+        } catch (IllegalArgumentException ex) {
+            // Expected
+        }
+        System.out.println("buildFromSorted: ok");
+    }
+
+    // union, intersection and difference of random trees in either mode, against the same operations on models
+    private static void checkSetOperations(long seed) throws Exception {
+        Random r = new Random(seed);
+        for (int round = 0; round < 200; round++) {
+            String name = "set operations";
+            TreeMap<Integer, Integer> a = new TreeMap<>();
+            TreeMap<Integer, Integer> b = new TreeMap<>();
+            BinarySearchTree<Integer> ta = new BinarySearchTree<>(r.nextBoolean());
+            BinarySearchTree<Integer> tb = new BinarySearchTree<>(r.nextBoolean());
+            for (int i = r.nextInt(100); i > 0; i--) {
+                Integer x = r.nextInt(KEYS);
+                ta.insert(x);
+                a.merge(x, 1, Integer::sum);
+            }
+            for (int i = r.nextInt(100); i > 0; i--) {
+                Integer x = r.nextInt(KEYS);
+                tb.insert(x);
+                b.merge(x, 1, Integer::sum);
+            }
+
+            TreeMap<Integer, Integer> union = new TreeMap<>(a);
+            b.forEach((k, v) -> union.merge(k, v, Integer::sum));
+            TreeMap<Integer, Integer> intersection = new TreeMap<>();
+            a.forEach((k, v) -> {
+                if (b.containsKey(k)) {
+                    intersection.put(k, Math.min(v, b.get(k)));
+                }
+            });
+            TreeMap<Integer, Integer> difference = new TreeMap<>();
+            a.forEach((k, v) -> {
+                if (v > b.getOrDefault(k, 0)) {
+                    difference.put(k, v - b.getOrDefault(k, 0));
+                }
+            });
+
+            verifyCounts(name + " union", ta.union(tb), union, round);
+            verifyShape(name + " union", ta.union(tb), union, round);
+            verifyCounts(name + " intersection", ta.intersection(tb), intersection, round);
+            verifyShape(name + " intersection", ta.intersection(tb), intersection, round);
+            verifyCounts(name + " difference", ta.difference(tb), difference, round);
+            verifyShape(name + " difference", ta.difference(tb), difference, round);
+            verifyCounts(name + " operand", ta, a, round); // Left untouched
+            verifyCounts(name + " operand", tb, b, round);
+        }
+        System.out.println("set operations: ok");
+    }
+
+    // Sorted input must not degrade the tree into a list
+    // Trees large enough for the fork/join tasks to split, in either mode
+    private static void checkParallel(long seed) throws Exception {
+        for (boolean counted : new boolean[] {false, true}) {
+            String name = counted ? "parallel counted" : "parallel list";
+            Random r = new Random(seed);
+            BinarySearchTree<Integer> tree = new BinarySearchTree<>(counted);
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            for (int i = 0; i < 200000; i++) {
+                Integer x = r.nextInt(100000);
+                tree.insert(x);
+                model.merge(x, 1, Integer::sum);
+            }
+
+            List<Integer> duplicatedKeys = new ArrayList<>();
+            List<Integer> singleKeys = new ArrayList<>();
+            model.forEach((k, v) -> (v > 1 ? duplicatedKeys : singleKeys).add(k));
+            check(tree.duplicatedElements().equals(duplicatedKeys), name, 0, "duplicatedElements");
+            check(tree.singleElements().equals(singleKeys), name, 0, "singleElements");
+
+            tree.removeAllDuplicates(tree.root);
+            tree.checkInvariants();
+            check(tree.numberOfElements() == model.size(), name, 0, "numberOfElements after removeAllDuplicates");
+            check(tree.numberOfDuplicatedElements() == 0 && tree.duplicatedElements().isEmpty(), name, 0,
+                    "duplicates left");
+            check(tree.singleElements().equals(new ArrayList<>(model.keySet())), name, 0, "singleElements after trim");
+        }
+        System.out.println("parallel: ok");
+    }
+
+    // The footprint report against the shape and contents it describes, in every storage mode
+    private static void checkFootprint(long seed) throws Exception {
+        String[] names = {"list", "linked list", "counted", "striped"};
+        for (String name : names) {
+            Random r = new Random(seed);
+            BinarySearchTree<Integer> tree = name.equals("list") ? new BinarySearchTree<>()
+                    : name.equals("linked list") ? new BinarySearchTree<Integer>(LinkedList::new)
+                    : new BinarySearchTree<>(true, name.equals("striped"));
+            TreeMap<Integer, Integer> model = new TreeMap<>();
+            verifyFootprint("footprint " + name, tree, model);
+
+            for (int i = 0; i < 5000; i++) {
+                Integer x = r.nextInt(1000);
+                int copies = r.nextInt(10) == 0 ? r.nextInt(40) + 1 : 1; // A few keys with many copies
+                for (int c = 0; c < copies; c++) {
+                    tree.insert(x);
+                }
+                model.merge(x, copies, Integer::sum);
+            }
+            verifyFootprint("footprint " + name, tree, model);
+
+            // Trimmed buckets must give their arrays back
+            for (Integer x : model.keySet()) {
+                tree.removeDuplicatesOfElement(x);
+            }
+            model.replaceAll((k, v) -> 1);
+            verifyFootprint("footprint " + name + " trimmed", tree, model);
+        }
+        System.out.println("footprint: ok");
+    }
+
+    private static void verifyFootprint(String name, BinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model) {
+        TreeFootprint report = tree.footprint();
+        int height = tree.root == null ? -1 : tree.root.height;
+        check(report.height() == height, name, 0, "height " + report.height() + ", expected " + height);
+        check(report.maxDepth() == Math.max(height, 0), name, 0, "maxDepth " + report.maxDepth());
+        check(report.averageDepth() <= Math.max(height, 0), name, 0, "averageDepth " + report.averageDepth());
+
+        long[] histogram = new long[33];
+        long entries = 0;
+        for (int copies : model.values()) {
+            histogram[32 - Integer.numberOfLeadingZeros(copies)]++;
+            entries += copies + 2;
+        }
+        check(Arrays.equals(report.bucketSizeHistogram(), histogram), name, 0,
+                "histogram " + Arrays.toString(report.bucketSizeHistogram()));
+
+        boolean linked = name.contains("linked");
+        boolean counted = name.contains("counted") || name.contains("striped");
+        check(report.nodeBytes() == 56L * model.size(), name, 0, "nodeBytes " + report.nodeBytes());
+        check(report.stripeBytes() == (name.contains("striped") ? 32L * model.size() : 0), name, 0,
+                "stripeBytes " + report.stripeBytes());
+        check(report.entryBytes() == (linked ? 24 * entries : 0), name, 0, "entryBytes " + report.entryBytes());
+        if (counted) {
+            check(report.bucketBytes() == 0, name, 0, "bucketBytes " + report.bucketBytes());
+        } else if (!linked && name.contains("trimmed")) {
+            // Every bucket holds one item inline, with no array
+            check(report.bucketBytes() == 32L * model.size(), name, 0, "bucketBytes " + report.bucketBytes());
+        } else {
+            check(report.bucketBytes() >= 32L * model.size(), name, 0, "bucketBytes " + report.bucketBytes());
+        }
+        check(report.keyBytes() >= 16L * model.size(), name, 0, "keyBytes " + report.keyBytes());
+        check(report.totalBytes() == report.nodeBytes() + report.bucketBytes() + report.entryBytes()
+                + report.stripeBytes() + report.keyBytes(), name, 0, "totalBytes");
+    }
+
+    private static void checkSortedInput() throws Exception {
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        for (int i = 0; i < 100000; i++) {
+            tree.insert(i);
+        }
+        tree.checkInvariants();
+        for (int i = 0; i < 100000; i += 2) {
+            tree.remove(i);
+        }
+        tree.checkInvariants();
+        check(tree.findMin() == 1 && tree.findMax() == 99999, "sorted", 0, "findMin and findMax");
+        System.out.println("sorted input: ok");
+    }
+
+    // find and numberOfDuplicates must not allocate, however many duplicates a key has
+    private static void checkAllocation() throws Exception {
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("allocation: skipped, no allocation counter");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        BinarySearchTree<Integer> tree = new BinarySearchTree<>();
+        Integer[] keys = new Integer[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = i;
+            for (int j = 0; j < 1000; j++) {
+                tree.insert(keys[i]);
+            }
+        }
+
+        long sum = 0;
+        long bytes = 0;
+        for (int round = 0; round < 3; round++) { // The first rounds warm up
+            long start = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 100000; i++) {
+                Integer x = keys[i % KEYS];
+                sum += tree.numberOfDuplicates(x) + (tree.find(x) == x ? 1 : 0);
+            }
+            bytes = threads.getThreadAllocatedBytes(thread) - start;
+        }
+        check(sum == 3L * 100000 * 1001, "allocation", 0, "lookups");
+        check(bytes < 1000, "allocation", 0, bytes + " bytes allocated by 100000 lookups");
+        System.out.println("allocation: ok, " + bytes + " bytes per 100000 lookups");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+}
@@ -0,0 +1,59 @@
+/**
+ * Checks class holds what the self-checks share. Each *Check class is run
+ * like BST, with a main, and throws on the first failure.
+ */
+final class Checks {
+
+    private Checks() {
+    }
+
+    static void check(boolean condition, String name, int step, String what) {
+        if (!condition) {
+            throw new AssertionError(name + ", step " + step + ": " + what);
+        }
+    }
+
+    interface Insert {
+
+        void insert(Integer x) throws Exception;
+    }
+
+    // Writers inserting 1 and 2 inserts times each; the last slot of the array is left for the caller
+    static Thread[] hotKeyWriters(int writers, int inserts, Insert insert) {
+        Thread[] threads = new Thread[writers + 1];
+        for (int w = 0; w < writers; w++) {
+            final int id = w;
+            threads[w] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < inserts; i++) {
+                        insert.insert((i + id) % 2 == 0 ? 1 : 2);
+                    }
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+        }
+        return threads;
+    }
+
+    // Starts the threads, waits for them and rethrows the first failure
+    static void runAll(Thread[] threads) throws InterruptedException {
+        Throwable[] failure = new Throwable[1];
+        for (Thread t : threads) {
+            t.setUncaughtExceptionHandler((thread, ex) -> {
+                synchronized (failure) {
+                    if (failure[0] == null) {
+                        failure[0] = ex;
+                    }
+                }
+            });
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        if (failure[0] != null) {
+            throw new AssertionError("Thread failed", failure[0]);
+        }
+    }
+}
@@ -0,0 +1,251 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ConcurrentSkipListMultiset class implements a thread-safe multiset with
+ * the duplicate operations of BinarySearchTree, for many writers at once.
+ * Keys live in a lock-free skip list and the duplicates of a key are kept
+ * as a count, as in the counted mode of BinarySearchTree.
+ *
+ * Every operation on a single key is linearizable. A counter that drops to
+ * zero is dead: it is never incremented again and is unlinked by whichever
+ * thread sees it first, so an insert can never be lost in a counter that is
+ * being removed.
+ */
+public class ConcurrentSkipListMultiset<AnyType extends Comparable<? super AnyType>>
+{
+
+    public ConcurrentSkipListMultiset()
+    {
+        map = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Inserts one copy of x.
+     *
+     * @param x the item to insert.
+     */
+    public void insert(AnyType x)
+    {
+        insert(x, 1);
+    }
+
+    /**
+     * Returns the number of copies of x.
+     *
+     * @param x the item to count.
+     * @return the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(AnyType x)
+    {
+        AtomicInteger counter = map.get(x);
+        return counter == null ? 0 : counter.get();
+    }
+
+    /**
+     * Returns true if at least one copy of x is present.
+     */
+    public boolean contains(AnyType x)
+    {
+        return numberOfDuplicates(x) > 0;
+    }
+
+    /**
+     * Removes one copy of x; the key goes away with its last copy.
+     *
+     * @param x the item to remove.
+     * @return true if a copy was removed.
+     */
+    public boolean removeOneDuplicateOfElement(AnyType x)
+    {
+        AtomicInteger counter = map.get(x);
+        if (counter == null)
+        {
+            return false;
+        }
+
+        while (true)
+        {
+            int copies = counter.get();
+            if (copies == 0)
+            {
+                map.remove(x, counter);
+                return false;
+            }
+            if (counter.compareAndSet(copies, copies - 1))
+            {
+                if (copies == 1)
+                {
+                    map.remove(x, counter);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes all the copies of x but one.
+     *
+     * @param x the item whose duplicates are removed.
+     * @return the number of copies removed.
+     */
+    public int removeDuplicatesOfElement(AnyType x)
+    {
+        AtomicInteger counter = map.get(x);
+        if (counter == null)
+        {
+            return 0;
+        }
+
+        while (true)
+        {
+            int copies = counter.get();
+            if (copies <= 1)
+            {
+                return 0;
+            }
+            if (counter.compareAndSet(copies, 1))
+            {
+                return copies - 1;
+            }
+        }
+    }
+
+    /**
+     * Removes every copy of x.
+     *
+     * @param x the item to remove.
+     * @return the number of copies removed.
+     */
+    public int remove(AnyType x)
+    {
+        AtomicInteger counter = map.get(x);
+        if (counter == null)
+        {
+            return 0;
+        }
+
+        int copies = counter.getAndSet(0);
+        map.remove(x, counter);
+        return copies;
+    }
+
+    /**
+     * Moves all the copies of A to B, if A has duplicates. Each key changes
+     * atomically, but a reader may see the copies gone from A before they
+     * arrive at B.
+     *
+     * @param A the item whose copies are replaced.
+     * @param B the item that replaces them.
+     */
+    public void findAndReplaceAllDuplicates(AnyType A, AnyType B)
+    {
+        AtomicInteger counter = map.get(A);
+        if (counter == null)
+        {
+            return;
+        }
+
+        while (true)
+        {
+            int copies = counter.get();
+            if (copies <= 1)
+            {
+                return;
+            }
+            if (counter.compareAndSet(copies, 0))
+            {
+                map.remove(A, counter);
+                insert(B, copies);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the smallest item, or null if empty.
+     */
+    public AnyType findMin()
+    {
+        for (Map.Entry<AnyType, AtomicInteger> e : map.entrySet())
+        {
+            if (e.getValue().get() > 0)
+            {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the largest item, or null if empty.
+     */
+    public AnyType findMax()
+    {
+        for (Map.Entry<AnyType, AtomicInteger> e : map.descendingMap().entrySet())
+        {
+            if (e.getValue().get() > 0)
+            {
+                return e.getKey();
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty()
+    {
+        return findMin() == null;
+    }
+
+    /**
+     * Returns the number of items, counting duplicates. This walks the keys,
+     * so under concurrent writes it is only a snapshot of each key in turn.
+     */
+    public long numberOfElements()
+    {
+        long total = 0;
+        for (AtomicInteger counter : map.values())
+        {
+            total += counter.get();
+        }
+        return total;
+    }
+
+    /**
+     * Internal method to add copies of x, retrying if its counter dies.
+     *
+     * @param x the item to insert.
+     * @param copies the number of copies to add.
+     */
+    private void insert(AnyType x, int copies)
+    {
+        while (true)
+        {
+            AtomicInteger counter = map.get(x);
+            if (counter == null)
+            {
+                counter = map.putIfAbsent(x, new AtomicInteger(copies));
+                if (counter == null)
+                {
+                    return;
+                }
+            }
+
+            int current = counter.get();
+            while (current > 0)
+            {
+                if (counter.compareAndSet(current, current + copies))
+                {
+                    return; //Duplicate
+                }
+                current = counter.get();
+            }
+
+            // Dead counter: help unlink it and start over
+            map.remove(x, counter);
+        }
+    }
+
+    private final ConcurrentSkipListMap<AnyType, AtomicInteger> map;
+}
@@ -0,0 +1,109 @@
+import java.util.Random;
+
+/**
+ * ConcurrentSkipListMultisetCheck runs writers that insert and remove copies
+ * of mostly the same few keys at once, and checks that the counts add up to
+ * what each operation reported, and that copies moved by
+ * findAndReplaceAllDuplicates are never lost or doubled.
+ *
+ * Usage: java ConcurrentSkipListMultisetCheck [seed]
+ */
+public class ConcurrentSkipListMultisetCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkCounts(seed);
+        checkReplace();
+
+        System.out.println("ConcurrentSkipListMultiset checks passed");
+    }
+
+    // Writers insert and remove copies; every operation reports what it did, so the counts must add up
+    private static void checkCounts(long seed) throws Exception {
+        ConcurrentSkipListMultiset<Integer> set = new ConcurrentSkipListMultiset<>();
+        long[][] net = new long[WRITERS][KEYS];
+
+        Thread[] writers = new Thread[WRITERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int id = w;
+            writers[w] = new Thread(() -> {
+                Random r = new Random(seed + id);
+                for (int i = 0; i < 100000; i++) {
+                    int x = r.nextInt(4) == 0 ? r.nextInt(KEYS) : r.nextInt(4); // Mostly hot keys
+                    switch (r.nextInt(8)) {
+                        case 0:
+                            if (set.removeOneDuplicateOfElement(x)) {
+                                net[id][x]--;
+                            }
+                            break;
+                        case 1:
+                            net[id][x] -= set.removeDuplicatesOfElement(x);
+                            break;
+                        case 2:
+                            net[id][x] -= set.remove(x);
+                            break;
+                        default:
+                            set.insert(x);
+                            net[id][x]++;
+                            break;
+                    }
+                }
+            });
+        }
+        Checks.runAll(writers);
+
+        long items = 0;
+        int min = -1;
+        int max = -1;
+        for (int x = 0; x < KEYS; x++) {
+            long expected = 0;
+            for (int w = 0; w < WRITERS; w++) {
+                expected += net[w][x];
+            }
+            check(set.numberOfDuplicates(x) == expected, "counts", 0,
+                    "numberOfDuplicates " + x + " = " + set.numberOfDuplicates(x) + ", expected " + expected);
+            check(set.contains(x) == (expected > 0), "counts", 0, "contains " + x);
+            if (expected > 0) {
+                min = min < 0 ? x : min;
+                max = x;
+            }
+            items += expected;
+        }
+        check(set.numberOfElements() == items, "counts", 0, "numberOfElements");
+        check(set.isEmpty() == (items == 0), "counts", 0, "isEmpty");
+        if (items > 0) {
+            check(set.findMin() == min && set.findMax() == max, "counts", 0, "findMin/findMax");
+        }
+        System.out.println("counts: ok");
+    }
+
+    // Copies moved back and forth while writers add to both keys are never lost or doubled
+    private static void checkReplace() throws Exception {
+        ConcurrentSkipListMultiset<Integer> set = new ConcurrentSkipListMultiset<>();
+        set.insert(1);
+        set.insert(1);
+
+        Thread[] threads = Checks.hotKeyWriters(WRITERS, HOT_INSERTS, x -> set.insert(x));
+        threads[WRITERS] = new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                set.findAndReplaceAllDuplicates(i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1);
+            }
+        });
+        Checks.runAll(threads);
+
+        long expected = 2 + (long) WRITERS * HOT_INSERTS;
+        long copies = set.numberOfDuplicates(1) + set.numberOfDuplicates(2);
+        check(copies == expected, "replace", 0, "copies of 1 and 2: " + copies + ", expected " + expected);
+        check(set.numberOfElements() == expected, "replace", 0, "numberOfElements");
+        System.out.println("replace: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+    private static final int WRITERS = 8;
+    private static final int HOT_INSERTS = 20000;
+}
@@ -0,0 +1,40 @@
+/**
+ * DuplicateBucket interface is what a BinarySearchTree node needs from the
+ * container holding the duplicates of its key. LinkedList implements it, and
+ * so does the more compact ArrayBucket; a tree is given the implementation to
+ * use when it is constructed.
+ */
+public interface DuplicateBucket<AnyType> extends Iterable<AnyType>
+{
+
+    /**
+     * Adds an item at the end of the bucket.
+     *
+     * @param x the item to add.
+     * @return true.
+     */
+    boolean add(AnyType x);
+
+    /**
+     * Adds an item at the front of the bucket.
+     *
+     * @param x the item to add.
+     */
+    void addFirst(AnyType x);
+
+    /**
+     * Returns the number of items in the bucket.
+     */
+    int size();
+
+    /**
+     * Remove items from index1 to index2 (including items at both indexes).
+     * Nothing is removed if index2 is smaller than index1.
+     */
+    void remove(int index1, int index2);
+
+    /**
+     * Prints every item, one per line, in order.
+     */
+    void showList();
+}
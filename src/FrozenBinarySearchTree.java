@@ -0,0 +1,205 @@
+/**
+ * FrozenBinarySearchTree class is a read-only copy of a BinarySearchTree,
+ * built by BinarySearchTree.freeze, for trees that are searched far more
+ * often than they change. The keys are stored in one array in Eytzinger
+ * (breadth-first) order: the children of position i are 2i and 2i + 1, so
+ * a search walks down a single array, the first levels share a few cache
+ * lines, and each step picks the next index with arithmetic rather than a
+ * branch on the comparison.
+ *
+ * Next to each key is its duplicate count and the number of items, counting
+ * duplicates, of all the smaller keys, which answers range counts with two
+ * searches.
+ */
+public class FrozenBinarySearchTree<AnyType extends Comparable<? super AnyType>>
+{
+
+    /**
+     * Construct the frozen tree.
+     *
+     * @param sortedKeys the distinct keys, in increasing order.
+     * @param sortedCounts the number of copies of each key.
+     */
+    FrozenBinarySearchTree(Object[] sortedKeys, int[] sortedCounts)
+    {
+        n = sortedKeys.length;
+        keys = new Object[n + 1]; // Position 0 is unused
+        counts = new int[n + 1];
+        before = new long[n + 1];
+
+        // In-order walk of the implicit tree, without recursion
+        long items = 0;
+        int k = Integer.highestOneBit(n);
+        for (int i = 0; i < n; i++)
+        {
+            keys[k] = sortedKeys[i];
+            counts[k] = sortedCounts[i];
+            before[k] = items;
+            items += sortedCounts[i];
+            k = successor(k);
+        }
+        total = items;
+    }
+
+    /**
+     * Returns the key equal to x, or null if there is none.
+     */
+    public AnyType find(AnyType x)
+    {
+        int i = ceilingIndex(x);
+        return (i != 0 && x.compareTo(key(i)) == 0) ? key(i) : null;
+    }
+
+    public boolean contains(AnyType x)
+    {
+        return find(x) != null;
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(AnyType x)
+    {
+        int i = ceilingIndex(x);
+        return (i != 0 && x.compareTo(key(i)) == 0) ? counts[i] : 0;
+    }
+
+    /**
+     * Returns the largest key less than or equal to x, or null if there is
+     * none.
+     */
+    public AnyType floor(AnyType x)
+    {
+        int i = descend(x, true);
+        return key(i >> (Integer.numberOfTrailingZeros(i) + 1)); // Last right turn
+    }
+
+    /**
+     * Returns the smallest key greater than or equal to x, or null if there
+     * is none.
+     */
+    public AnyType ceiling(AnyType x)
+    {
+        return key(ceilingIndex(x));
+    }
+
+    /**
+     * Returns the number of items smaller than x, counting duplicates.
+     */
+    public long rank(AnyType x)
+    {
+        return countLess(x, false);
+    }
+
+    /**
+     * Returns the number of items between lo and hi, counting duplicates.
+     *
+     * @param lo the smallest item of the range, inclusive.
+     * @param hi the largest item of the range, inclusive.
+     * @return the number of items in the range, or 0 if lo is larger than hi.
+     */
+    public long countInRange(AnyType lo, AnyType hi)
+    {
+        if (lo.compareTo(hi) > 0)
+        {
+            return 0;
+        }
+        return countLess(hi, true) - countLess(lo, false);
+    }
+
+    public AnyType findMin()
+    {
+        return key(n == 0 ? 0 : Integer.highestOneBit(n)); // Leftmost position
+    }
+
+    public AnyType findMax()
+    {
+        int i = 1;
+        while (2 * i + 1 <= n)
+        {
+            i = 2 * i + 1;
+        }
+        return key(n == 0 ? 0 : i);
+    }
+
+    public boolean isEmpty()
+    {
+        return n == 0;
+    }
+
+    // Number of items, counting duplicates
+    public long numberOfElements()
+    {
+        return total;
+    }
+
+    public int numberOfDistinctElements()
+    {
+        return n;
+    }
+
+    /**
+     * Internal method to walk from the root to below a leaf, going right
+     * past every key less than x (or equal to x, if inclusive).
+     *
+     * @return the position the walk fell off at. Its bits are the turns
+     * taken, 0 for left and 1 for right.
+     */
+    private int descend(AnyType x, boolean inclusive)
+    {
+        int bound = inclusive ? 1 : 0;
+        int i = 1;
+        while (i <= n)
+        {
+            i = 2 * i + ((key(i).compareTo(x) < bound) ? 1 : 0);
+        }
+        return i;
+    }
+
+    // Position of the smallest key >= x, or 0 if there is none
+    private int ceilingIndex(AnyType x)
+    {
+        int i = descend(x, false);
+        return i >> (Integer.numberOfTrailingZeros(~i) + 1); // Last left turn
+    }
+
+    /**
+     * Internal method to count the items smaller than x, or no larger than
+     * x if inclusive.
+     */
+    private long countLess(AnyType x, boolean inclusive)
+    {
+        int i = descend(x, inclusive);
+        i = i >> (Integer.numberOfTrailingZeros(~i) + 1); // First key not counted
+        return i == 0 ? total : before[i];
+    }
+
+    // Next position in key order; 0 after the last one
+    private int successor(int k)
+    {
+        if (2 * k + 1 <= n)
+        {
+            k = 2 * k + 1;
+            while (2 * k <= n)
+            {
+                k = 2 * k;
+            }
+            return k;
+        }
+        return k >> (Integer.numberOfTrailingZeros(~k) + 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private AnyType key(int i)
+    {
+        return (AnyType) keys[i];
+    }
+
+    private final int n; // Number of keys
+    private final long total; // Number of items, counting duplicates
+
+    // Indexed by Eytzinger position, from 1 to n
+    private final Object[] keys;
+    private final int[] counts;
+    private final long[] before; // Items in all the smaller keys
+}
@@ -0,0 +1,130 @@
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * IntBinarySearchTreeCheck runs random operations on an IntBinarySearchTree
+ * against a TreeMap model of the counts, and checks that sorted input keeps
+ * the tree within the depth of its ancestor stack.
+ *
+ * Usage: java IntBinarySearchTreeCheck [seed]
+ */
+public class IntBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree(seed);
+        checkSortedInput();
+
+        System.out.println("IntBinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts
+    private static void checkTree(long seed) throws Exception {
+        Random r = new Random(seed);
+        IntBinarySearchTree tree = new IntBinarySearchTree();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            int x = r.nextInt(KEYS) - KEYS / 2;
+            int y = r.nextInt(KEYS) - KEYS / 2;
+            switch (r.nextInt(10)) {
+                case 0:
+                    try {
+                        tree.remove(x);
+                        check(model.remove(x) != null, "int", step, "removed absent " + x);
+                    } catch (BinarySearchTree.ItemNotFoundException ex) {
+                        check(!model.containsKey(x), "int", step, "could not remove " + x);
+                    }
+                    break;
+                case 1:
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                    break;
+                case 2:
+                    tree.removeDuplicatesOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> 1);
+                    break;
+                case 3:
+                    tree.findAndReplaceAllDuplicates(x, y);
+                    Integer copies = model.get(x);
+                    if (copies != null && copies > 1) {
+                        model.remove(x);
+                        model.merge(y, copies, Integer::sum);
+                    }
+                    break;
+                case 4:
+                    try {
+                        tree.removeMin();
+                        check(model.pollFirstEntry() != null, "int", step, "removeMin on an empty tree");
+                    } catch (NoSuchElementException ex) {
+                        check(model.isEmpty(), "int", step, "removeMin failed");
+                    }
+                    break;
+                case 5:
+                    if (r.nextInt(50) == 0) {
+                        tree.removeAllDuplicates();
+                        model.replaceAll((k, v) -> 1);
+                    } else if (r.nextInt(500) == 0) {
+                        tree.makeEmpty();
+                        model.clear();
+                    }
+                    break;
+                default:
+                    tree.insert(x);
+                    model.merge(x, 1, Integer::sum);
+                    break;
+            }
+            verify(tree, model, step);
+        }
+        System.out.println("int: ok");
+    }
+
+    private static void verify(IntBinarySearchTree tree, TreeMap<Integer, Integer> model, int step) {
+        long items = 0;
+        for (int k = -KEYS / 2; k < KEYS / 2; k++) {
+            int expected = model.getOrDefault(k, 0);
+            check(tree.numberOfDuplicates(k) == expected, "int", step, "numberOfDuplicates " + k);
+            check(tree.contains(k) == (expected > 0), "int", step, "contains " + k);
+            items += expected;
+        }
+        check(tree.numberOfElements() == items, "int", step, "numberOfElements");
+        check(tree.numberOfDistinctElements() == model.size(), "int", step, "numberOfDistinctElements");
+        check(tree.isEmpty() == model.isEmpty(), "int", step, "isEmpty");
+        if (model.isEmpty()) {
+            try {
+                tree.findMin();
+                check(false, "int", step, "findMin on an empty tree");
+            } catch (NoSuchElementException ex) {
+                // Expected
+            }
+        } else {
+            check(tree.findMin() == model.firstKey() && tree.findMax() == model.lastKey(), "int", step,
+                    "findMin and findMax");
+        }
+    }
+
+    // Sorted input must stay balanced, or the descents would overrun their ancestor stack
+    private static void checkSortedInput() throws Exception {
+        IntBinarySearchTree tree = new IntBinarySearchTree();
+        for (int i = 0; i < 1000000; i++) {
+            tree.insert(i);
+        }
+        for (int i = 0; i < 1000000; i += 2) {
+            tree.remove(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            tree.removeMin();
+        }
+        check(tree.numberOfDistinctElements() == 499000, "sorted", 0, "numberOfDistinctElements");
+        check(tree.findMin() == 2001 && tree.findMax() == 999999, "sorted", 0, "findMin and findMax");
+        System.out.println("sorted input: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+}
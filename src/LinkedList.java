@@ -2,6 +2,7 @@ import java.util.AbstractCollection;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.ListIterator;
 import java.util.logging.Level;
@@ -11,13 +12,29 @@ import java.util.logging.Logger;
  * LinkedList class implements a doubly-linked list.
  */
 public class LinkedList<AnyType extends Comparable<? super AnyType>> extends AbstractCollection<AnyType>
+        implements DuplicateBucket<AnyType>
 {
 
     /**
-     * Construct an empty LinkedList.
+     * Construct an empty LinkedList without an index.
      */
     public LinkedList()
     {
+        this(false);
+    }
+
+    /**
+     * Construct an empty LinkedList.
+     *
+     * @param indexed if true, the list keeps a hash index from each value to
+     * its number of occurrences and its first Node, for O(1) contains and
+     * findOccurrences and a fast getIndex. Without it, as by default, the
+     * list is smaller, and range removal and cut-and-paste into another list
+     * are O(1) instead of O(number of items moved).
+     */
+    public LinkedList(boolean indexed)
+    {
+        this.indexed = indexed;
         clear();
     }
 
@@ -26,7 +43,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public LinkedList(Collection<? extends AnyType> other)
     {
-        clear();
+        this(false);
         this.addAll(other);
     }
 
@@ -38,6 +55,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
         beginMarker = new Node<>(null, null, null);
         endMarker = new Node<>(null, beginMarker, null);
         beginMarker.next = endMarker;
+        index = indexed ? new HashMap<>() : null;
 
         theSize = 0;
         modCount++;
@@ -61,6 +79,10 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public boolean contains(Object x)
     {
+        if (index != null)
+        {
+            return index.containsKey(x);
+        }
         return findPos(x) != null;
     }
 
@@ -74,6 +96,20 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     private Node<AnyType> findPos(Object x)
     {
+        if (index != null)
+        {
+            Occurrences<AnyType> e = index.get(x);
+            if (e == null)
+            {
+                return null;
+            }
+            if (e.first == null)
+            {
+                e.first = findFrom(beginMarker.next, e.value);
+            }
+            return e.first;
+        }
+
         for (Node<AnyType> p = beginMarker.next; p != endMarker; p = p.next)
         {
             if (x == null)
@@ -120,6 +156,8 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
         p.prev = newNode;
         theSize++;
         modCount++;
+        indexLink(newNode);
+        moveFinger(newNode, idx);
     }
 
     /**
@@ -211,7 +249,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
         Node<AnyType> p = getNode(idx);
         AnyType oldVal = p.data;
 
-        p.data = newVal;
+        setData(p, newVal);
         return oldVal;
     }
 
@@ -229,7 +267,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
             Node<AnyType> p = getNode(i);
             if (cmp.compare(p.data, x) == 0)
             {
-                p.data = y;
+                setData(p, y);
             }
         }
     }
@@ -248,8 +286,8 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
             Node<AnyType> p = getNode(i);
             if (cmp.compare(p.data, x) == 0)
             {
-                p.next.data = p.prev.data;
-                p.prev.data = x;
+                setData(p.next, p.prev.data);
+                setData(p.prev, x);
             }
         }
     }
@@ -273,13 +311,19 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      *
      * @param index1 the index where to start  removing elements
      * @param index2 the index where to end  removing elements
+     * @throws IndexOutOfBoundsException if index1 or index2 is out of range.
      */
     public void remove(int index1, int index2)
     {
-        for (int i = index1; i <= index2; i++)
+        if (index2 < index1)
         {
-            remove(index1);
+            return;
         }
+
+        Node<AnyType> first = getNode(index1);
+        Node<AnyType> last = getNode(index2);
+        unlink(first, last, index2 - index1 + 1);
+        moveFinger(last.next, index1);
     }
     /// Lesson 5 Exercises
     /**
@@ -396,22 +440,28 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      *
      * @param index1 where to start copying
      * @param index2 where to stop copying
-     * @param index3 the index after which to paste the cut elements
+     * @param index3 the index after which to paste the cut elements, -1 to
+     * paste them at the front
+     * @throws IllegalArgumentException if index3 is between index1 and index2.
      */
     public void cutAndPaste(int index1, int index2, int index3)
     {
-        if (index3 > index2)
+        if (index2 < index1 || index3 == index1 - 1)
         {
-            copyAndPaste(index1, index2, index3);
-            remove(index1, index2);
-        } else
+            return; // Nothing moves
+        }
+        if (index3 >= index1 && index3 <= index2)
         {
-            //no of elements we have copied
-            int count = index2 - index3 + 1;
-            copyAndPaste(index1, index2, index3);
-            remove(index1 + count, index2 + count);
+            throw new IllegalArgumentException("cannot paste " + index1 + ".." + index2 + " after " + index3);
         }
 
+        Node<AnyType> before = getNode(index3 + 1, 0, size());
+        Node<AnyType> first = getNode(index1);
+        Node<AnyType> last = getNode(index2);
+        int count = index2 - index1 + 1;
+
+        unlink(first, last, count);
+        link(first, last, count, before);
     }
     /// Lesson 5 Exercises
     /**
@@ -424,12 +474,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public void cutAndPasteIntoList(int index1, int index2, int index3, LinkedList<AnyType> list2)
     {
-        for (int i = index1; i <= index2; i++)
-        {
-            index3++;
-            list2.add(index3, getNode(i).data);
-        }
-        remove(index1, index2);
+        moveInto(index1, index2, index3 + 1, list2);
     }
     /**
      * Copy elements from the list from index1 to index2, and paste them into List2 before index3 preserving the order.
@@ -480,12 +525,34 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public void cutAndPasteIntoListBefore(int index1, int index2, int index3, LinkedList<AnyType> list2)
     {
-        //index3++;
-        for (int i = index1; i <= index2; i++)
+        moveInto(index1, index2, index3, list2);
+    }
+
+    /**
+     * Moves the Nodes from index1 to index2 into list2, before its index3,
+     * by relinking them.
+     *
+     * @throws IndexOutOfBoundsException if an index is out of range.
+     */
+    private void moveInto(int index1, int index2, int index3, LinkedList<AnyType> list2)
+    {
+        if (list2 == this)
         {
-            list2.add(index3, getNode(i).data);
+            cutAndPaste(index1, index2, index3 - 1);
+            return;
         }
-        remove(index1, index2);
+        if (index2 < index1)
+        {
+            return;
+        }
+
+        Node<AnyType> before = list2.getNode(index3, 0, list2.size());
+        Node<AnyType> first = getNode(index1);
+        Node<AnyType> last = getNode(index2);
+        int count = index2 - index1 + 1;
+
+        unlink(first, last, count);
+        list2.link(first, last, count, before);
     }
 
     /// Lesson 5 Exercises
@@ -548,6 +615,12 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
 
     public int getIndex(AnyType x)
     {
+        if (this.index != null)
+        {
+            Node<AnyType> p = findPos(x);
+            return p == null ? -1 : indexOf(p);
+        }
+
         int index = -1; //not found case
         for (int i = 0; i < this.theSize; i++)
         {
@@ -587,7 +660,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public LinkedList<AnyType> clone( )
     {
-        LinkedList<AnyType> clone = new LinkedList<AnyType>();
+        LinkedList<AnyType> clone = new LinkedList<AnyType>(indexed);
         LinkedListIterator itr = (LinkedListIterator) this.iterator();
 
         while (itr.hasNext())
@@ -606,7 +679,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public LinkedList cloneWithoutDuplicates(Comparator<AnyType> cmp )
     {
-        LinkedList<AnyType> clone = new LinkedList<AnyType>();
+        LinkedList<AnyType> clone = new LinkedList<AnyType>(indexed);
         LinkedListIterator itr = (LinkedListIterator) this.iterator();
         LinkedListIterator cloneItr = (LinkedListIterator) clone.iterator();
 
@@ -743,6 +816,25 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
         return count;
     }
 
+    /**
+     * Returns the number of items equal to x; O(1) if the list is indexed.
+     */
+    public int findOccurrences(AnyType x)
+    {
+        if (index != null)
+        {
+            Occurrences<AnyType> e = index.get(x);
+            return e == null ? 0 : e.count;
+        }
+
+        int count = 0;
+        for (Node<AnyType> p = findPos(x); p != null; p = findFrom(p.next, x))
+        {
+            count++;
+        }
+        return count;
+    }
+
     // Lab Exercises
     /**
      * remove duplicate elements
@@ -761,9 +853,11 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
                 if (nextPosition.next != null && nextPosition.next.data != null
                         && cmp.compare(nextPosition.next.data, currentPosition.data) == 0)
                 {
+                    indexUnlink(nextPosition.next, true);
                     nextPosition.next = nextPosition.next.next;
                     nextPosition.next.prev = nextPosition;
                     theSize--;
+                    modCount++;
                 } else
                 {
                     nextPosition = nextPosition.next;
@@ -847,7 +941,21 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
             throw new IndexOutOfBoundsException("getNode index: " + idx + "; size: " + size());
         }
 
-        if (idx < size() / 2)
+        // Start from whichever of the two ends and the finger is closest
+        int fromFinger = (fingerModCount == modCount) ? Math.abs(idx - fingerIndex) : Integer.MAX_VALUE;
+
+        if (fromFinger < Math.min(idx, size() - idx))
+        {
+            p = finger;
+            for (int i = fingerIndex; i < idx; i++)
+            {
+                p = p.next;
+            }
+            for (int i = fingerIndex; i > idx; i--)
+            {
+                p = p.prev;
+            }
+        } else if (idx < size() / 2)
         {
             p = beginMarker.next;
             for (int i = 0; i < idx; i++)
@@ -863,9 +971,24 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
             }
         }
 
+        moveFinger(p, idx);
         return p;
     }
 
+    /**
+     * Remembers the Node at position idx, so that the next getNode can walk
+     * from there. The finger is only trusted until the list changes shape.
+     *
+     * @param p the Node at position idx; the endMarker if idx is size().
+     * @param idx the position of p.
+     */
+    private void moveFinger(Node<AnyType> p, int idx)
+    {
+        finger = p;
+        fingerIndex = idx;
+        fingerModCount = modCount;
+    }
+
     /**
      * Removes an item from this collection.
      *
@@ -874,7 +997,193 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     public AnyType remove(int idx)
     {
-        return remove(getNode(idx));
+        Node<AnyType> p = getNode(idx);
+        AnyType removed = remove(p);
+        moveFinger(p.next, idx);
+        return removed;
+    }
+
+    // Number of distinct values in the index, or -1 if not indexed
+    int indexedValues()
+    {
+        return index == null ? -1 : index.size();
+    }
+
+    /**
+     * Unlinks the chain of Nodes from first to last.
+     *
+     * @param first the first Node of the chain.
+     * @param last the last Node of the chain.
+     * @param count the number of Nodes in the chain.
+     */
+    private void unlink(Node<AnyType> first, Node<AnyType> last, int count)
+    {
+        if (index != null)
+        {
+            for (Node<AnyType> p = first; p != last.next; p = p.next)
+            {
+                indexUnlink(p, false);
+            }
+        }
+        first.prev.next = last.next;
+        last.next.prev = first.prev;
+        theSize -= count;
+        modCount++;
+    }
+
+    /**
+     * Links a chain of Nodes in front of Node before.
+     *
+     * @param first the first Node of the chain.
+     * @param last the last Node of the chain.
+     * @param count the number of Nodes in the chain.
+     * @param before the Node of this list to link the chain in front of.
+     */
+    private void link(Node<AnyType> first, Node<AnyType> last, int count, Node<AnyType> before)
+    {
+        first.prev = before.prev;
+        last.next = before;
+        before.prev.next = first;
+        before.prev = last;
+        theSize += count;
+        modCount++;
+
+        if (index != null)
+        {
+            for (Node<AnyType> p = first; p != before; p = p.next)
+            {
+                indexLink(p);
+            }
+        }
+    }
+
+    /**
+     * Changes the object contained in Node p, keeping the index up to date.
+     *
+     * @param p the Node.
+     * @param x the new object.
+     */
+    private void setData(Node<AnyType> p, AnyType x)
+    {
+        if (index == null || p == beginMarker || p == endMarker)
+        {
+            p.data = x;
+            return;
+        }
+
+        indexUnlink(p, true);
+        p.data = x;
+        indexLink(p);
+    }
+
+    /**
+     * Counts a Node just linked into the list in the index.
+     *
+     * @param p the Node, with its neighbours already linked.
+     */
+    private void indexLink(Node<AnyType> p)
+    {
+        if (index == null)
+        {
+            return;
+        }
+
+        Occurrences<AnyType> e = index.get(p.data);
+        if (e == null)
+        {
+            index.put(p.data, new Occurrences<>(p));
+        } else
+        {
+            e.count++;
+            if (p.prev == beginMarker)
+            {
+                e.first = p;
+            } else if (p.next != endMarker)
+            {
+                e.first = null; // May now come first; found again on demand
+            }
+        }
+    }
+
+    /**
+     * Drops a Node about to be unlinked, or to change its object, from the
+     * index.
+     *
+     * @param p the Node, still linked.
+     * @param rescan if true and p is the first occurrence, look ahead for
+     * the next one now; otherwise it is found again on demand.
+     */
+    private void indexUnlink(Node<AnyType> p, boolean rescan)
+    {
+        if (index == null)
+        {
+            return;
+        }
+
+        Occurrences<AnyType> e = index.get(p.data);
+        if (--e.count == 0)
+        {
+            index.remove(p.data);
+        } else if (e.first == p)
+        {
+            e.first = rescan ? findFrom(p.next, e.value) : null;
+        }
+    }
+
+    /**
+     * Returns the first Node from p onwards holding an object equal to x.
+     */
+    private Node<AnyType> findFrom(Node<AnyType> p, AnyType x)
+    {
+        for (; p != endMarker; p = p.next)
+        {
+            if (x == null ? p.data == null : x.equals(p.data))
+            {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the position of Node p, walking from it in both directions at
+     * once until one side reaches the finger or an end of the list.
+     *
+     * @param p a Node of this list.
+     * @return the position of p.
+     */
+    private int indexOf(Node<AnyType> p)
+    {
+        boolean useFinger = fingerModCount == modCount;
+        Node<AnyType> back = p;
+        Node<AnyType> ahead = p;
+        int idx;
+
+        for (int steps = 0;; steps++)
+        {
+            if (back == beginMarker)
+            {
+                idx = steps - 1;
+                break;
+            } else if (useFinger && back == finger)
+            {
+                idx = fingerIndex + steps;
+                break;
+            } else if (ahead == endMarker)
+            {
+                idx = theSize - steps;
+                break;
+            } else if (useFinger && ahead == finger)
+            {
+                idx = fingerIndex - steps;
+                break;
+            }
+            back = back.prev;
+            ahead = ahead.next;
+        }
+
+        moveFinger(p, idx);
+        return idx;
     }
 
     /**
@@ -885,6 +1194,7 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
      */
     private AnyType remove(Node<AnyType> p)
     {
+        indexUnlink(p, true);
         p.next.prev = p.prev;
         p.prev.next = p.next;
         theSize--;
@@ -1015,6 +1325,25 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
 
     }
 
+    /**
+     * This is the index entry of one value: how many Nodes hold it and which
+     * comes first, or null if that is not known yet.
+     */
+    private static class Occurrences<AnyType>
+    {
+
+        Occurrences(Node<AnyType> p)
+        {
+            value = p.data;
+            count = 1;
+            first = p;
+        }
+
+        final AnyType value;
+        int count;
+        Node<AnyType> first;
+    }
+
     static class NoSuchElementException extends Exception
     {
 
@@ -1044,8 +1373,16 @@ public class LinkedList<AnyType extends Comparable<? super AnyType>> extends Abs
 
     private final Node<AnyType> NOT_FOUND = null;
 
+    private final boolean indexed;
+    private HashMap<AnyType, Occurrences<AnyType>> index; // null if not indexed
+
     private int theSize;
     private Node<AnyType> beginMarker;
     private Node<AnyType> endMarker;
     private int modCount = 0;
+
+    // Last Node reached by position, valid while modCount is fingerModCount
+    private Node<AnyType> finger;
+    private int fingerIndex;
+    private int fingerModCount = -1;
 }
\ No newline at end of file
@@ -0,0 +1,214 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * LinkedListCheck runs random positional operations on a LinkedList against
+ * an ArrayList, interleaved with sequential walks in both directions, so
+ * the finger that getNode caches is used and then invalidated by every kind
+ * of structural change. It also splices random ranges within a list and
+ * between two lists, and checks that bad ranges change nothing. Every check
+ * runs on indexed lists too, whose contains, getIndex and findOccurrences
+ * answers are compared with the model after each step.
+ *
+ * Usage: java LinkedListCheck [seed]
+ */
+public class LinkedListCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkPositions(false, seed);
+        checkPositions(true, seed);
+        checkSplices(false, seed);
+        checkSplices(true, seed);
+
+        System.out.println("LinkedList checks passed");
+    }
+
+    // Random positional operations against a list model
+    private static void checkPositions(boolean indexed, long seed) throws Exception {
+        Random r = new Random(seed);
+        LinkedList<Integer> list = new LinkedList<>(indexed);
+        List<Integer> model = new ArrayList<>();
+
+        for (int step = 0; step < 50000; step++) {
+            Integer x = r.nextInt(KEYS);
+            int size = model.size();
+            int i = size == 0 ? 0 : r.nextInt(size);
+            switch (r.nextInt(12)) {
+                case 0:
+                    int at = r.nextInt(size + 1);
+                    list.add(at, x);
+                    model.add(at, x);
+                    break;
+                case 1:
+                    if (size > 0) {
+                        check(list.remove(i).equals(model.remove(i)), "positions", step, "remove " + i);
+                    }
+                    break;
+                case 2:
+                    if (size > 0) {
+                        check(list.set(i, x).equals(model.set(i, x)), "positions", step, "set " + i);
+                    }
+                    break;
+                case 3:
+                    list.addFirst(x);
+                    model.add(0, x);
+                    break;
+                case 4:
+                    if (size > 0 && r.nextBoolean()) {
+                        check(list.removeFirst().equals(model.remove(0)), "positions", step, "removeFirst");
+                    } else if (size > 0) {
+                        check(list.removeLast().equals(model.remove(size - 1)), "positions", step, "removeLast");
+                    }
+                    break;
+                case 5:
+                    check(list.remove((Object) x) == model.remove(x), "positions", step, "remove " + x);
+                    break;
+                case 6:
+                    if (size > 0) {
+                        int j = r.nextInt(size);
+                        list.swap(i, j);
+                        model.set(i, model.set(j, model.get(i)));
+                    }
+                    break;
+                case 7:
+                    // Drop every item equal to x through the iterator
+                    for (Iterator<Integer> itr = list.iterator(); itr.hasNext(); ) {
+                        if (itr.next().equals(x)) {
+                            itr.remove();
+                        }
+                    }
+                    model.removeIf(x::equals);
+                    break;
+                case 8:
+                    if (r.nextInt(100) == 0) {
+                        list.clear();
+                        model.clear();
+                    }
+                    break;
+                default:
+                    list.add(x);
+                    model.add(x);
+                    break;
+            }
+            verify(list, model, step, r);
+        }
+        System.out.println((indexed ? "indexed " : "") + "positions: ok");
+    }
+
+    // Random range removals and cut-and-paste moves, within a list and between two, against list models;
+    // the second list is indexed when the first is not
+    private static void checkSplices(boolean indexed, long seed) throws Exception {
+        Random r = new Random(seed);
+        LinkedList<Integer> list = new LinkedList<>(indexed);
+        LinkedList<Integer> list2 = new LinkedList<>(!indexed);
+        List<Integer> model = new ArrayList<>();
+        List<Integer> model2 = new ArrayList<>();
+
+        for (int step = 0; step < 20000; step++) {
+            while (model.size() < 4) {
+                list.add(step % KEYS);
+                model.add(step % KEYS);
+            }
+            int size = model.size();
+            int i1 = r.nextInt(size);
+            int i2 = i1 + r.nextInt(size - i1);
+            int count = i2 - i1 + 1;
+            switch (r.nextInt(6)) {
+                case 0:
+                    list.remove(i1, i2);
+                    model.subList(i1, i2 + 1).clear();
+                    break;
+                case 1:
+                    // Paste after an index outside the range, the positions being those before the cut
+                    int i3 = r.nextInt(size - count + 1) - 1;
+                    i3 = i3 < i1 ? i3 : i3 + count;
+                    list.cutAndPaste(i1, i2, i3);
+                    List<Integer> range = new ArrayList<>(model.subList(i1, i2 + 1));
+                    model.subList(i1, i2 + 1).clear();
+                    model.addAll(i3 < i1 ? i3 + 1 : i3 + 1 - count, range);
+                    break;
+                case 2:
+                    try {
+                        list.cutAndPaste(i1, i2, i1 + r.nextInt(count));
+                        check(false, "splices", step, "pasted a range inside itself");
+                    } catch (IllegalArgumentException ex) {
+                        // Expected, and nothing moved
+                    }
+                    break;
+                case 3:
+                    int at = r.nextInt(model2.size() + 1);
+                    if (r.nextBoolean()) {
+                        list.cutAndPasteIntoList(i1, i2, at - 1, list2);
+                    } else {
+                        list.cutAndPasteIntoListBefore(i1, i2, at, list2);
+                    }
+                    List<Integer> moved = new ArrayList<>(model.subList(i1, i2 + 1));
+                    model.subList(i1, i2 + 1).clear();
+                    model2.addAll(at, moved);
+                    break;
+                case 4:
+                    try {
+                        list.remove(i1, size);
+                        check(false, "splices", step, "removed past the end");
+                    } catch (IndexOutOfBoundsException ex) {
+                        // Expected, and nothing removed
+                    }
+                    break;
+                default:
+                    if (!model2.isEmpty()) {
+                        // Move some back, so that both lists keep changing
+                        int j1 = r.nextInt(model2.size());
+                        int j2 = j1 + r.nextInt(model2.size() - j1);
+                        int back = r.nextInt(model.size() + 1);
+                        list2.cutAndPasteIntoListBefore(j1, j2, back, list);
+                        List<Integer> returned = new ArrayList<>(model2.subList(j1, j2 + 1));
+                        model2.subList(j1, j2 + 1).clear();
+                        model.addAll(back, returned);
+                    }
+                    break;
+            }
+            verify(list, model, step, r);
+            verify(list2, model2, step, r);
+        }
+        System.out.println((indexed ? "indexed " : "") + "splices: ok");
+    }
+
+    // Sequential walks both ways, then random probes, each checked against the model
+    private static void verify(LinkedList<Integer> list, List<Integer> model, int step, Random r) {
+        check(list.size() == model.size(), "positions", step, "size " + list.size() + ", expected " + model.size());
+        for (int i = 0; i < model.size(); i++) {
+            check(list.get(i).equals(model.get(i)), "positions", step, "get " + i);
+        }
+        for (int i = model.size() - 1; i >= 0; i--) {
+            check(list.get(i).equals(model.get(i)), "positions", step, "get " + i + " walking back");
+        }
+        for (int k = 0; k < 10 && !model.isEmpty(); k++) {
+            int i = r.nextInt(model.size());
+            check(list.get(i).equals(model.get(i)), "positions", step, "probe " + i);
+        }
+        List<Integer> items = new ArrayList<>();
+        list.forEach(items::add);
+        check(items.equals(model), "positions", step, "iteration " + items);
+
+        for (int x = 0; x < KEYS; x++) {
+            int occurrences = Collections.frequency(model, x);
+            check(list.contains(x) == (occurrences > 0), "index", step, "contains " + x);
+            check(list.getIndex(x) == model.indexOf(x), "index", step, "getIndex " + x);
+            check(list.findOccurrences(x) == occurrences, "index", step, "findOccurrences " + x);
+        }
+        check(list.indexedValues() == -1 || list.indexedValues() == new HashSet<>(model).size(), "index", step,
+                "indexedValues " + list.indexedValues());
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 32;
+}
@@ -0,0 +1,520 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * LongBinarySearchTree class implements an AVL tree with duplicates for long
+ * keys. It has the duplicate operations of BinarySearchTree in counted
+ * mode, but keys are plain longs and counts plain ints: nothing is boxed
+ * on insert, find or remove and comparisons never go through Comparable.
+ */
+public class LongBinarySearchTree
+{
+
+    public LongBinarySearchTree()
+    {
+        root = null;
+    }
+
+    /**
+     * Inserts one copy of x.
+     */
+    public void insert(long x)
+    {
+        insert(x, 1);
+    }
+
+    /**
+     * Internal method to insert several copies of x with one descent.
+     *
+     * @param x the item to insert.
+     * @param copies the number of copies of x, at least 1.
+     */
+    private void insert(long x, int copies)
+    {
+        if (root == null)
+        {
+            root = new LongNode(x, copies);
+            distinct++;
+            total += copies;
+            return;
+        }
+
+        int depth = 0;
+        LongNode p = root;
+        while (true)
+        {
+            path[depth++] = p;
+
+            if (x < p.key)
+            {
+                if (p.left == null)
+                {
+                    p.left = new LongNode(x, copies);
+                    break;
+                }
+                p = p.left;
+            } else if (x > p.key)
+            {
+                if (p.right == null)
+                {
+                    p.right = new LongNode(x, copies);
+                    break;
+                }
+                p = p.right;
+            } else
+            {
+                p.count += copies;  //Duplicate
+                total += copies;
+                Arrays.fill(path, 0, depth, null);
+                return;
+            }
+        }
+
+        distinct++;
+        total += copies;
+        root = rebalancePath(depth);
+    }
+
+    /**
+     * Removes x together with all its duplicates.
+     *
+     * @throws BinarySearchTree.ItemNotFoundException if x is not found.
+     */
+    public void remove(long x) throws BinarySearchTree.ItemNotFoundException
+    {
+        int depth = findPath(x);
+        if (depth == 0)
+        {
+            throw new BinarySearchTree.ItemNotFoundException(Long.toString(x));
+        }
+        removeNode(path[depth - 1], depth - 1);
+    }
+
+    /**
+     * Removes the smallest key together with all its duplicates.
+     *
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public void removeMin()
+    {
+        if (root == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        int depth = 0;
+        LongNode p = root;
+        while (p.left != null)
+        {
+            path[depth++] = p;
+            p = p.left;
+        }
+        removeNode(p, depth);
+    }
+
+    /**
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public long findMin()
+    {
+        if (root == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        LongNode t = root;
+        while (t.left != null)
+        {
+            t = t.left;
+        }
+        return t.key;
+    }
+
+    /**
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public long findMax()
+    {
+        if (root == null)
+        {
+            throw new NoSuchElementException();
+        }
+
+        LongNode t = root;
+        while (t.right != null)
+        {
+            t = t.right;
+        }
+        return t.key;
+    }
+
+    public boolean contains(long x)
+    {
+        return find(x) != null;
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(long x)
+    {
+        LongNode t = find(x);
+        return t == null ? 0 : t.count;
+    }
+
+    /**
+     * Replaces all the copies of A with copies of B, if A has duplicates.
+     * A node cannot hold another key, so the copies move to the node of B.
+     */
+    public void findAndReplaceAllDuplicates(long A, long B)
+    {
+        int depth = findPath(A);
+        if (depth == 0)
+        {
+            return;
+        }
+
+        LongNode tn = path[depth - 1];
+        int noOfDuplicates = tn.count;
+        if (noOfDuplicates <= 1)
+        {
+            Arrays.fill(path, 0, depth, null);
+            return;
+        }
+
+        removeNode(tn, depth - 1);
+        insert(B, noOfDuplicates);
+    }
+
+    public void removeDuplicatesOfElement(long x)
+    {
+        LongNode t = find(x);
+        if (t != null)
+        {
+            total -= t.count - 1;
+            t.count = 1;
+        }
+    }
+
+    public void removeOneDuplicateOfElement(long x)
+    {
+        int depth = findPath(x);
+        if (depth == 0)
+        {
+            return;
+        }
+
+        LongNode t = path[depth - 1];
+        if (t.count > 1)
+        {
+            t.count--;
+            total--;
+            Arrays.fill(path, 0, depth, null);
+        } else
+        {
+            removeNode(t, depth - 1); // Last copy, drop the key
+        }
+    }
+
+    public void removeAllDuplicates()
+    {
+        removeAllDuplicates(root);
+        total = distinct;
+    }
+
+    public boolean isEmpty()
+    {
+        return root == null;
+    }
+
+    public void makeEmpty()
+    {
+        root = null;
+        distinct = 0;
+        total = 0;
+    }
+
+    // Number of items, counting duplicates
+    public long numberOfElements()
+    {
+        return total;
+    }
+
+    public int numberOfDistinctElements()
+    {
+        return distinct;
+    }
+
+    // Print the tree in order, all the copies included.
+    public void printInOrder()
+    {
+        printInOrder(root);
+    }
+
+    public void printDuplicates()
+    {
+        printDuplicates(root);
+    }
+
+    public void showSingleElements()
+    {
+        showSingleElements(root);
+    }
+
+    private void printInOrder(LongNode t)
+    {
+        if (t == null)
+        {
+            return;
+        }
+
+        printInOrder(t.left); // Left
+        for (int i = 0; i < t.count; i++)
+        {
+            System.out.println(t.key); // Node
+        }
+        printInOrder(t.right); // Right
+    }
+
+    private void printDuplicates(LongNode t)
+    {
+        if (t == null)
+        {
+            return;
+        }
+
+        if (t.count > 1)
+        {
+            System.out.println("Element " + t.key + " repeated " + t.count + " times!");
+        }
+        printDuplicates(t.left);
+        printDuplicates(t.right);
+    }
+
+    private void showSingleElements(LongNode t)
+    {
+        if (t == null)
+        {
+            return;
+        }
+
+        if (t.count == 1)
+        {
+            System.out.println("Element " + t.key + " repeated " + t.count + " time!");
+        }
+        showSingleElements(t.left);
+        showSingleElements(t.right);
+    }
+
+    private void removeAllDuplicates(LongNode t)
+    {
+        if (t == null)
+        {
+            return;
+        }
+
+        t.count = 1;
+        removeAllDuplicates(t.left);
+        removeAllDuplicates(t.right);
+    }
+
+    private LongNode find(long x)
+    {
+        LongNode t = root;
+        while (t != null)
+        {
+            if (x < t.key)
+            {
+                t = t.left;
+            } else if (x > t.key)
+            {
+                t = t.right;
+            } else
+            {
+                return t; // Match
+            }
+        }
+        return null; // Not found
+    }
+
+    /**
+     * Internal method to record the path from the root down to the node
+     * holding x.
+     *
+     * @return the number of nodes recorded, the last one being the match,
+     * or 0 if x is not found.
+     */
+    private int findPath(long x)
+    {
+        int depth = 0;
+        LongNode t = root;
+        while (t != null)
+        {
+            path[depth++] = t;
+
+            if (x < t.key)
+            {
+                t = t.left;
+            } else if (x > t.key)
+            {
+                t = t.right;
+            } else
+            {
+                return depth; // Match
+            }
+        }
+
+        Arrays.fill(path, 0, depth, null);
+        return 0; // Not found
+    }
+
+    /**
+     * Internal method to unlink a node and all its copies.
+     *
+     * @param p the node to unlink.
+     * @param depth the number of ancestors of p recorded in path.
+     */
+    private void removeNode(LongNode p, int depth)
+    {
+        distinct--;
+        total -= p.count;
+
+        if (p.left != null && p.right != null) // Two children
+        {
+            path[depth++] = p;
+            LongNode min = p.right;
+            while (min.left != null)
+            {
+                path[depth++] = min;
+                min = min.left;
+            }
+            p.key = min.key;
+            p.count = min.count;
+            p = min;
+        }
+
+        LongNode child = (p.left != null) ? p.left : p.right;
+        if (depth == 0)
+        {
+            root = child;
+            return;
+        }
+
+        LongNode parent = path[depth - 1];
+        if (parent.left == p)
+        {
+            parent.left = child;
+        } else
+        {
+            parent.right = child;
+        }
+        root = rebalancePath(depth);
+    }
+
+    /**
+     * Internal method to restore balance along the recorded path.
+     *
+     * @param depth the number of nodes recorded in path.
+     * @return the new root.
+     */
+    private LongNode rebalancePath(int depth)
+    {
+        LongNode t = null;
+
+        for (int i = depth - 1; i >= 0; i--)
+        {
+            LongNode old = path[i];
+            t = balance(old);
+            path[i] = null;
+
+            if (i > 0)
+            {
+                LongNode parent = path[i - 1];
+                if (parent.left == old)
+                {
+                    parent.left = t;
+                } else
+                {
+                    parent.right = t;
+                }
+            }
+        }
+        return t;
+    }
+
+    private static int height(LongNode t)
+    {
+        return t == null ? -1 : t.height;
+    }
+
+    private static void update(LongNode t)
+    {
+        t.height = Math.max(height(t.left), height(t.right)) + 1;
+    }
+
+    private static LongNode balance(LongNode t)
+    {
+        if (height(t.left) - height(t.right) > 1)
+        {
+            if (height(t.left.left) < height(t.left.right))
+            {
+                t.left = rotateWithRightChild(t.left);
+            }
+            t = rotateWithLeftChild(t);
+        } else if (height(t.right) - height(t.left) > 1)
+        {
+            if (height(t.right.right) < height(t.right.left))
+            {
+                t.right = rotateWithLeftChild(t.right);
+            }
+            t = rotateWithRightChild(t);
+        }
+
+        update(t);
+        return t;
+    }
+
+    private static LongNode rotateWithLeftChild(LongNode k2)
+    {
+        LongNode k1 = k2.left;
+        k2.left = k1.right;
+        k1.right = k2;
+        update(k2);
+        update(k1);
+        return k1;
+    }
+
+    private static LongNode rotateWithRightChild(LongNode k1)
+    {
+        LongNode k2 = k1.right;
+        k1.right = k2.left;
+        k2.left = k1;
+        update(k1);
+        update(k2);
+        return k2;
+    }
+
+    // Node holding a long key and the number of its copies
+    private static final class LongNode
+    {
+
+        LongNode(long theKey, int theCount)
+        {
+            key = theKey;
+            count = theCount;
+        }
+
+        long key;
+        int count;
+        int height;
+        LongNode left;
+        LongNode right;
+    }
+
+    private LongNode root;
+    private int distinct = 0; // Number of nodes
+    private long total = 0; // Number of items, counting duplicates
+
+    // Ancestors recorded by the descents of insert and remove
+    private final LongNode[] path = new LongNode[BinarySearchTree.MAX_HEIGHT];
+}
@@ -0,0 +1,132 @@
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * LongBinarySearchTreeCheck runs random operations on a LongBinarySearchTree
+ * against a TreeMap model of the counts, with keys spread far beyond the int
+ * range, and checks that sorted input keeps the tree within the depth of its
+ * ancestor stack.
+ *
+ * Usage: java LongBinarySearchTreeCheck [seed]
+ */
+public class LongBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree(seed);
+        checkSortedInput();
+
+        System.out.println("LongBinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts
+    private static void checkTree(long seed) throws Exception {
+        Random r = new Random(seed);
+        LongBinarySearchTree tree = new LongBinarySearchTree();
+        TreeMap<Long, Integer> model = new TreeMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            long x = SPREAD * (r.nextInt(KEYS) - KEYS / 2);
+            long y = SPREAD * (r.nextInt(KEYS) - KEYS / 2);
+            switch (r.nextInt(10)) {
+                case 0:
+                    try {
+                        tree.remove(x);
+                        check(model.remove(x) != null, "long", step, "removed absent " + x);
+                    } catch (BinarySearchTree.ItemNotFoundException ex) {
+                        check(!model.containsKey(x), "long", step, "could not remove " + x);
+                    }
+                    break;
+                case 1:
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                    break;
+                case 2:
+                    tree.removeDuplicatesOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> 1);
+                    break;
+                case 3:
+                    tree.findAndReplaceAllDuplicates(x, y);
+                    Integer copies = model.get(x);
+                    if (copies != null && copies > 1) {
+                        model.remove(x);
+                        model.merge(y, copies, Integer::sum);
+                    }
+                    break;
+                case 4:
+                    try {
+                        tree.removeMin();
+                        check(model.pollFirstEntry() != null, "long", step, "removeMin on an empty tree");
+                    } catch (NoSuchElementException ex) {
+                        check(model.isEmpty(), "long", step, "removeMin failed");
+                    }
+                    break;
+                case 5:
+                    if (r.nextInt(50) == 0) {
+                        tree.removeAllDuplicates();
+                        model.replaceAll((k, v) -> 1);
+                    } else if (r.nextInt(500) == 0) {
+                        tree.makeEmpty();
+                        model.clear();
+                    }
+                    break;
+                default:
+                    tree.insert(x);
+                    model.merge(x, 1, Integer::sum);
+                    break;
+            }
+            verify(tree, model, step);
+        }
+        System.out.println("long: ok");
+    }
+
+    private static void verify(LongBinarySearchTree tree, TreeMap<Long, Integer> model, int step) {
+        long items = 0;
+        for (long k = -SPREAD * KEYS / 2; k < SPREAD * KEYS / 2; k += SPREAD) {
+            int expected = model.getOrDefault(k, 0);
+            check(tree.numberOfDuplicates(k) == expected, "long", step, "numberOfDuplicates " + k);
+            check(tree.contains(k) == (expected > 0), "long", step, "contains " + k);
+            items += expected;
+        }
+        check(tree.numberOfElements() == items, "long", step, "numberOfElements");
+        check(tree.numberOfDistinctElements() == model.size(), "long", step, "numberOfDistinctElements");
+        check(tree.isEmpty() == model.isEmpty(), "long", step, "isEmpty");
+        if (model.isEmpty()) {
+            try {
+                tree.findMin();
+                check(false, "long", step, "findMin on an empty tree");
+            } catch (NoSuchElementException ex) {
+                // Expected
+            }
+        } else {
+            check(tree.findMin() == model.firstKey() && tree.findMax() == model.lastKey(), "long", step,
+                    "findMin and findMax");
+        }
+    }
+
+    // Sorted input must stay balanced, or the descents would overrun their ancestor stack
+    private static void checkSortedInput() throws Exception {
+        LongBinarySearchTree tree = new LongBinarySearchTree();
+        for (long i = 0; i < 1000000; i++) {
+            tree.insert(Long.MIN_VALUE + i);
+        }
+        for (long i = 0; i < 1000000; i += 2) {
+            tree.remove(Long.MIN_VALUE + i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            tree.removeMin();
+        }
+        check(tree.numberOfDistinctElements() == 499000, "sorted", 0, "numberOfDistinctElements");
+        check(tree.findMin() == Long.MIN_VALUE + 2001 && tree.findMax() == Long.MIN_VALUE + 999999, "sorted", 0, "findMin and findMax");
+        System.out.println("sorted input: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+    private static final long SPREAD = 1L << 40; // Distance between keys
+}
@@ -0,0 +1,438 @@
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * OffHeapBinarySearchTree class implements an AVL tree with duplicates for
+ * long keys whose nodes live outside the Java heap. A node is a fixed-size
+ * record (key, count, children, height) in a chunk of direct memory, and a
+ * child is the index of its record, so the heap holds only the chunk table
+ * however many keys the tree has, and the garbage collector never traces it.
+ *
+ * The balancing and the reuse of freed records are those of SlotAvlTree.
+ *
+ * The tree must be closed when no longer needed. close frees every chunk at
+ * once through sun.misc.Unsafe.invokeCleaner, and any later use of the tree
+ * throws IllegalStateException. On a runtime without it, close only drops
+ * the chunks and their memory comes back when the garbage collector next
+ * finds them unreachable.
+ */
+public class OffHeapBinarySearchTree extends SlotAvlTree implements AutoCloseable
+{
+
+    public OffHeapBinarySearchTree()
+    {
+        chunks = new ByteBuffer[1];
+        chunks[0] = newChunk();
+        used = 1;
+        clear();
+    }
+
+    /**
+     * Inserts one copy of x.
+     */
+    public void insert(long x)
+    {
+        checkOpen();
+        if (root == NIL)
+        {
+            root = allocate(x);
+            return;
+        }
+
+        int depth = 0;
+        int p = root;
+        while (true)
+        {
+            path[depth++] = p;
+            long k = key(p);
+
+            if (x < k)
+            {
+                if (left(p) == NIL)
+                {
+                    setLeft(p, allocate(x));
+                    break;
+                }
+                p = left(p);
+            } else if (x > k)
+            {
+                if (right(p) == NIL)
+                {
+                    setRight(p, allocate(x));
+                    break;
+                }
+                p = right(p);
+            } else
+            {
+                setCount(p, count(p) + 1);  //Duplicate
+                total++;
+                return;
+            }
+        }
+
+        root = rebalancePath(depth);
+    }
+
+    /**
+     * Removes x together with all its duplicates.
+     *
+     * @throws BinarySearchTree.ItemNotFoundException if x is not found.
+     */
+    public void remove(long x) throws BinarySearchTree.ItemNotFoundException
+    {
+        checkOpen();
+        int depth = findPath(x);
+        if (depth == 0)
+        {
+            throw new BinarySearchTree.ItemNotFoundException(Long.toString(x));
+        }
+        removeNode(path[depth - 1], depth - 1);
+    }
+
+    public void removeOneDuplicateOfElement(long x)
+    {
+        checkOpen();
+        int depth = findPath(x);
+        if (depth != 0)
+        {
+            removeOne(depth);
+        }
+    }
+
+    public void removeDuplicatesOfElement(long x)
+    {
+        checkOpen();
+        int t = find(x);
+        if (t != NIL)
+        {
+            total -= count(t) - 1;
+            setCount(t, 1);
+        }
+    }
+
+    public boolean contains(long x)
+    {
+        checkOpen();
+        return find(x) != NIL;
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(long x)
+    {
+        checkOpen();
+        int t = find(x);
+        return t == NIL ? 0 : count(t);
+    }
+
+    /**
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public long findMin()
+    {
+        checkOpen();
+        if (root == NIL)
+        {
+            throw new NoSuchElementException();
+        }
+
+        int t = root;
+        while (left(t) != NIL)
+        {
+            t = left(t);
+        }
+        return key(t);
+    }
+
+    /**
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public long findMax()
+    {
+        checkOpen();
+        if (root == NIL)
+        {
+            throw new NoSuchElementException();
+        }
+
+        int t = root;
+        while (right(t) != NIL)
+        {
+            t = right(t);
+        }
+        return key(t);
+    }
+
+    public boolean isEmpty()
+    {
+        checkOpen();
+        return root == NIL;
+    }
+
+    // Number of items, counting duplicates
+    public long numberOfElements()
+    {
+        checkOpen();
+        return total;
+    }
+
+    public int numberOfDistinctElements()
+    {
+        checkOpen();
+        return distinct;
+    }
+
+    // Bytes of direct memory held by the tree
+    public long offHeapBytes()
+    {
+        checkOpen();
+        return (long) used * CHUNK * NODE_BYTES;
+    }
+
+    /**
+     * Frees the tree's direct memory. Calling it again does nothing.
+     */
+    public void close()
+    {
+        if (chunks == null)
+        {
+            return;
+        }
+
+        ByteBuffer[] old = chunks;
+        chunks = null;
+        for (int i = 0; i < used; i++)
+        {
+            free(old[i]);
+            old[i] = null;
+        }
+        used = 0;
+        root = NIL;
+        distinct = 0;
+        total = 0;
+    }
+
+    private void checkOpen()
+    {
+        if (chunks == null)
+        {
+            throw new IllegalStateException("OffHeapBinarySearchTree is closed");
+        }
+    }
+
+    private int find(long x)
+    {
+        int t = root;
+        while (t != NIL)
+        {
+            long k = key(t);
+
+            if (x < k)
+            {
+                t = left(t);
+            } else if (x > k)
+            {
+                t = right(t);
+            } else
+            {
+                return t; // Match
+            }
+        }
+        return NIL; // Not found
+    }
+
+    /**
+     * Internal method to record the path from the root down to the record
+     * holding x.
+     *
+     * @return the number of records on the path, the last one being the
+     * match, or 0 if x is not found.
+     */
+    private int findPath(long x)
+    {
+        int depth = 0;
+        int t = root;
+        while (t != NIL)
+        {
+            path[depth++] = t;
+            long k = key(t);
+
+            if (x < k)
+            {
+                t = left(t);
+            } else if (x > k)
+            {
+                t = right(t);
+            } else
+            {
+                return depth; // Match
+            }
+        }
+        return 0; // Not found
+    }
+
+    private int allocate(long x)
+    {
+        int t = allocate(1);
+        setKey(t, x);
+        return t;
+    }
+
+    void reserve(int t)
+    {
+        if (t == (long) used * CHUNK)
+        {
+            grow();
+        }
+    }
+
+    // Add one chunk of direct memory; the chunks already there stay put
+    private void grow()
+    {
+        if (used == MAX_CHUNKS)
+        {
+            throw new IllegalStateException("OffHeapBinarySearchTree is full");
+        }
+        if (used == chunks.length)
+        {
+            chunks = Arrays.copyOf(chunks, used * 2);
+        }
+        chunks[used++] = newChunk();
+    }
+
+    private static ByteBuffer newChunk()
+    {
+        return ByteBuffer.allocateDirect(CHUNK * NODE_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    /**
+     * Internal method to return the memory of a chunk now rather than when
+     * the collector finds it unreachable. The chunk must not be used again.
+     */
+    private static void free(ByteBuffer chunk)
+    {
+        if (CLEANER == null)
+        {
+            return; // Left to the collector
+        }
+
+        try
+        {
+            CLEANER.invoke(UNSAFE, chunk);
+        } catch (ReflectiveOperationException ex)
+        {
+            // Left to the collector
+        }
+    }
+
+    // Byte offset of a record within its chunk
+    private static int offset(int t)
+    {
+        return (t & MASK) * NODE_BYTES;
+    }
+
+    private long key(int t)
+    {
+        return chunks[t >>> SHIFT].getLong(offset(t) + KEY);
+    }
+
+    private void setKey(int t, long x)
+    {
+        chunks[t >>> SHIFT].putLong(offset(t) + KEY, x);
+    }
+
+    void copyKey(int from, int to)
+    {
+        setKey(to, key(from));
+    }
+
+    void clearKey(int t)
+    {
+        // A free record keeps its stale key
+    }
+
+    int count(int t)
+    {
+        return chunks[t >>> SHIFT].getInt(offset(t) + COUNT);
+    }
+
+    void setCount(int t, int c)
+    {
+        chunks[t >>> SHIFT].putInt(offset(t) + COUNT, c);
+    }
+
+    int left(int t)
+    {
+        return chunks[t >>> SHIFT].getInt(offset(t) + LEFT);
+    }
+
+    void setLeft(int t, int l)
+    {
+        chunks[t >>> SHIFT].putInt(offset(t) + LEFT, l);
+    }
+
+    int right(int t)
+    {
+        return chunks[t >>> SHIFT].getInt(offset(t) + RIGHT);
+    }
+
+    void setRight(int t, int r)
+    {
+        chunks[t >>> SHIFT].putInt(offset(t) + RIGHT, r);
+    }
+
+    int height(int t)
+    {
+        return chunks[t >>> SHIFT].getInt(offset(t) + HEIGHT);
+    }
+
+    void setHeight(int t, int h)
+    {
+        chunks[t >>> SHIFT].putInt(offset(t) + HEIGHT, h);
+    }
+
+    // Record layout, in bytes
+    private static final int KEY = 0;
+    private static final int COUNT = 8;
+    private static final int LEFT = 12;
+    private static final int RIGHT = 16;
+    private static final int HEIGHT = 20;
+    private static final int NODE_BYTES = 24;
+
+    private static final int SHIFT = 16;
+    private static final int CHUNK = 1 << SHIFT; // Records per chunk
+    private static final int MASK = CHUNK - 1;
+    private static final int MAX_CHUNKS = 1 << (31 - SHIFT); // Keeps indices positive
+
+    // sun.misc.Unsafe and its invokeCleaner method, or null if not available
+    private static final Object UNSAFE;
+    private static final Method CLEANER;
+
+    static
+    {
+        Object unsafe = null;
+        Method cleaner = null;
+        try
+        {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException ex)
+        {
+            unsafe = null;
+            cleaner = null;
+        }
+        UNSAFE = unsafe;
+        CLEANER = cleaner;
+    }
+
+    private ByteBuffer[] chunks; // null once closed
+    private int used; // Number of chunks in use
+}
@@ -0,0 +1,149 @@
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * OffHeapBinarySearchTreeCheck runs random operations on an
+ * OffHeapBinarySearchTree against a TreeMap model of the counts, checks that
+ * freed records are reused before another chunk is taken, and that every
+ * use of a closed tree throws.
+ *
+ * Usage: java OffHeapBinarySearchTreeCheck [seed]
+ */
+public class OffHeapBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree(seed);
+        checkRecordReuse();
+        checkClosed();
+
+        System.out.println("OffHeapBinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts
+    private static void checkTree(long seed) throws Exception {
+        Random r = new Random(seed);
+        TreeMap<Long, Integer> model = new TreeMap<>();
+
+        try (OffHeapBinarySearchTree tree = new OffHeapBinarySearchTree()) {
+            for (int step = 0; step < 20000; step++) {
+                long x = SPREAD * (r.nextInt(KEYS) - KEYS / 2);
+                switch (r.nextInt(8)) {
+                    case 0:
+                        try {
+                            tree.remove(x);
+                            check(model.remove(x) != null, "off-heap", step, "removed absent " + x);
+                        } catch (BinarySearchTree.ItemNotFoundException ex) {
+                            check(!model.containsKey(x), "off-heap", step, "could not remove " + x);
+                        }
+                        break;
+                    case 1:
+                        tree.removeOneDuplicateOfElement(x);
+                        model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                        break;
+                    case 2:
+                        tree.removeDuplicatesOfElement(x);
+                        model.computeIfPresent(x, (k, v) -> 1);
+                        break;
+                    default:
+                        tree.insert(x);
+                        model.merge(x, 1, Integer::sum);
+                        break;
+                }
+                verify(tree, model, step);
+            }
+        }
+        System.out.println("off-heap: ok");
+    }
+
+    private static void verify(OffHeapBinarySearchTree tree, TreeMap<Long, Integer> model, int step) {
+        long items = 0;
+        for (long k = -SPREAD * KEYS / 2; k < SPREAD * KEYS / 2; k += SPREAD) {
+            int expected = model.getOrDefault(k, 0);
+            check(tree.numberOfDuplicates(k) == expected, "off-heap", step, "numberOfDuplicates " + k);
+            check(tree.contains(k) == (expected > 0), "off-heap", step, "contains " + k);
+            items += expected;
+        }
+        check(tree.numberOfElements() == items, "off-heap", step, "numberOfElements");
+        check(tree.numberOfDistinctElements() == model.size(), "off-heap", step, "numberOfDistinctElements");
+        check(tree.isEmpty() == model.isEmpty(), "off-heap", step, "isEmpty");
+        if (model.isEmpty()) {
+            try {
+                tree.findMin();
+                check(false, "off-heap", step, "findMin on an empty tree");
+            } catch (NoSuchElementException ex) {
+                // Expected
+            }
+        } else {
+            check(tree.findMin() == model.firstKey() && tree.findMax() == model.lastKey(), "off-heap", step,
+                    "findMin and findMax");
+        }
+    }
+
+    // Keys removed and inserted again must go back into the freed records
+    private static void checkRecordReuse() throws Exception {
+        try (OffHeapBinarySearchTree tree = new OffHeapBinarySearchTree()) {
+            for (long i = 0; i < 100000; i++) {
+                tree.insert(i);
+            }
+            long bytes = tree.offHeapBytes();
+            for (int round = 0; round < 10; round++) {
+                for (long i = 0; i < 100000; i += 2) {
+                    tree.remove(i);
+                }
+                for (long i = 0; i < 100000; i += 2) {
+                    tree.insert(i);
+                }
+            }
+            check(tree.offHeapBytes() == bytes, "records", 0, "grew from " + bytes + " to " + tree.offHeapBytes());
+            check(tree.numberOfDistinctElements() == 100000, "records", 0, "numberOfDistinctElements");
+            check(tree.findMin() == 0 && tree.findMax() == 99999, "records", 0, "findMin and findMax");
+        }
+        System.out.println("record reuse: ok");
+    }
+
+    private interface Use {
+
+        void use(OffHeapBinarySearchTree tree) throws Exception;
+    }
+
+    // Once the memory is freed, every public method but close must refuse to touch it
+    private static void checkClosed() throws Exception {
+        Use[] uses = {
+            tree -> tree.insert(1),
+            tree -> tree.remove(1),
+            tree -> tree.removeOneDuplicateOfElement(1),
+            tree -> tree.removeDuplicatesOfElement(1),
+            tree -> tree.contains(1),
+            tree -> tree.numberOfDuplicates(1),
+            tree -> tree.findMin(),
+            tree -> tree.findMax(),
+            tree -> tree.isEmpty(),
+            tree -> tree.numberOfElements(),
+            tree -> tree.numberOfDistinctElements(),
+            tree -> tree.offHeapBytes()
+        };
+        for (int i = 0; i < uses.length; i++) {
+            OffHeapBinarySearchTree tree = new OffHeapBinarySearchTree();
+            tree.insert(1);
+            tree.close();
+            tree.close(); // Does nothing the second time
+            try {
+                uses[i].use(tree);
+                check(false, "closed", i, "use " + i + " of a closed tree did not throw");
+            } catch (IllegalStateException ex) {
+                // Expected
+            }
+        }
+        System.out.println("closed: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+    private static final long SPREAD = 1L << 40; // Distance between keys
+}
@@ -0,0 +1,441 @@
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
+
+/**
+ * PersistentBinarySearchTree class implements an AVL tree with duplicates
+ * whose nodes are never modified. A change copies only the path from the
+ * root to the node it touches and shares every other subtree and duplicate
+ * list with the previous version, then publishes the new root with a
+ * compare-and-set. A snapshot is therefore just the current root: taking one
+ * is O(1) and readers of a snapshot never block writers or see a torn tree.
+ */
+public class PersistentBinarySearchTree<AnyType extends Comparable<? super AnyType>> implements Iterable<AnyType>
+{
+
+    public PersistentBinarySearchTree()
+    {
+        this(null);
+    }
+
+    private PersistentBinarySearchTree(Node<AnyType> t)
+    {
+        root = new AtomicReference<>(t);
+    }
+
+    /**
+     * Returns a tree holding the current contents, in O(1). Later changes
+     * to either tree do not affect the other.
+     *
+     * @return the snapshot.
+     */
+    public PersistentBinarySearchTree<AnyType> snapshot()
+    {
+        return new PersistentBinarySearchTree<>(root.get());
+    }
+
+    public void insert(AnyType x)
+    {
+        change(t -> modify(t, x, c -> new Copies<>(x, c)));
+    }
+
+    /**
+     * Removes x together with all its duplicates.
+     */
+    public void remove(AnyType x)
+    {
+        change(t -> modify(t, x, c -> null));
+    }
+
+    public void removeOneDuplicateOfElement(AnyType x)
+    {
+        change(t -> modify(t, x, c -> c == null ? null : c.next));
+    }
+
+    public void removeDuplicatesOfElement(AnyType x)
+    {
+        change(t -> modify(t, x, c -> (c == null || c.next == null) ? c : new Copies<>(c.item, null)));
+    }
+
+    public void removeAllDuplicates()
+    {
+        change(this::trimDuplicates);
+    }
+
+    /**
+     * Replaces all the copies of A with copies of B, if A has duplicates.
+     * The node of A cannot hold B, so the copies move to the node of B.
+     */
+    public void findAndReplaceAllDuplicates(AnyType A, AnyType B)
+    {
+        change(t ->
+        {
+            Node<AnyType> tn = find(t, A);
+            if (tn == null || tn.copies.size <= 1)
+            {
+                return t;
+            }
+
+            int noOfDuplicates = tn.copies.size;
+            return modify(modify(t, A, c -> null), B, c ->
+            {
+                for (int i = 0; i < noOfDuplicates; i++)
+                {
+                    c = new Copies<>(B, c);
+                }
+                return c;
+            });
+        });
+    }
+
+    public AnyType find(AnyType x)
+    {
+        Node<AnyType> t = find(root.get(), x);
+        return t == null ? null : t.key;
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(AnyType x)
+    {
+        Node<AnyType> t = find(root.get(), x);
+        return t == null ? 0 : t.copies.size;
+    }
+
+    public AnyType findMin()
+    {
+        Node<AnyType> t = findMin(root.get());
+        return t == null ? null : t.key;
+    }
+
+    public AnyType findMax()
+    {
+        Node<AnyType> t = root.get();
+        if (t != null)
+        {
+            while (t.right != null)
+            {
+                t = t.right;
+            }
+        }
+        return t == null ? null : t.key;
+    }
+
+    public boolean isEmpty()
+    {
+        return root.get() == null;
+    }
+
+    public int numberOfElements()
+    {
+        Node<AnyType> t = root.get();
+        return t == null ? 0 : t.total;
+    }
+
+    public int numberOfDistinctElements()
+    {
+        Node<AnyType> t = root.get();
+        return t == null ? 0 : t.size;
+    }
+
+    // Print the tree in order, all the copies included.
+    public void printInOrder()
+    {
+        for (AnyType x : this)
+        {
+            System.out.println(x);
+        }
+    }
+
+    public void printDuplicates()
+    {
+        printDuplicates(root.get());
+    }
+
+    /**
+     * Obtains an Iterator over the tree as it is now, in order and with every
+     * duplicate. Later changes are not seen.
+     *
+     * @return an iterator positioned prior to the smallest item.
+     */
+    public Iterator<AnyType> iterator()
+    {
+        return new PersistentIterator<>(root.get());
+    }
+
+    /**
+     * Internal method to apply a change and publish the new root.
+     * The change must not have side effects, as it is run again if another
+     * writer published first.
+     *
+     * @param change computes the new root from the current one.
+     */
+    private void change(UnaryOperator<Node<AnyType>> change)
+    {
+        while (true)
+        {
+            Node<AnyType> current = root.get();
+            Node<AnyType> updated = change.apply(current);
+            if (updated == current || root.compareAndSet(current, updated))
+            {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Internal method to change the copies of x, copying the path to it.
+     *
+     * @param t the node that roots the tree.
+     * @param x the key to change.
+     * @param f maps the copies of x (null if absent) to its new copies
+     * (null to drop the key).
+     * @return the new root, or t itself if nothing changed.
+     */
+    private Node<AnyType> modify(Node<AnyType> t, AnyType x, UnaryOperator<Copies<AnyType>> f)
+    {
+        if (t == null)
+        {
+            Copies<AnyType> c = f.apply(null);
+            return c == null ? null : new Node<>(x, c, null, null);
+        }
+
+        int compareResult = x.compareTo(t.key);
+
+        if (compareResult < 0)
+        {
+            Node<AnyType> left = modify(t.left, x, f);
+            return left == t.left ? t : balance(t.key, t.copies, left, t.right);
+        } else if (compareResult > 0)
+        {
+            Node<AnyType> right = modify(t.right, x, f);
+            return right == t.right ? t : balance(t.key, t.copies, t.left, right);
+        }
+
+        Copies<AnyType> c = f.apply(t.copies);
+        if (c == t.copies)
+        {
+            return t;
+        } else if (c != null)
+        {
+            return new Node<>(t.key, c, t.left, t.right);
+        } else if (t.left == null)
+        {
+            return t.right;
+        } else if (t.right == null)
+        {
+            return t.left;
+        }
+
+        Node<AnyType> min = findMin(t.right);
+        return balance(min.key, min.copies, t.left, removeMin(t.right));
+    }
+
+    private Node<AnyType> removeMin(Node<AnyType> t)
+    {
+        if (t.left == null)
+        {
+            return t.right;
+        }
+        return balance(t.key, t.copies, removeMin(t.left), t.right);
+    }
+
+    private Node<AnyType> trimDuplicates(Node<AnyType> t)
+    {
+        if (t == null || t.duplicated == 0)
+        {
+            return t; // Nothing to trim below, share it
+        }
+
+        Copies<AnyType> c = (t.copies.next == null) ? t.copies : new Copies<>(t.copies.item, null);
+        return new Node<>(t.key, c, trimDuplicates(t.left), trimDuplicates(t.right));
+    }
+
+    private void printDuplicates(Node<AnyType> t)
+    {
+        if (t == null || t.duplicated == 0)
+        {
+            return;
+        }
+
+        if (t.copies.size > 1)
+        {
+            System.out.println("Element " + t.key + " repeated " + t.copies.size + " times!");
+        }
+        printDuplicates(t.left);
+        printDuplicates(t.right);
+    }
+
+    private static <AnyType extends Comparable<? super AnyType>> Node<AnyType> find(Node<AnyType> t, AnyType x)
+    {
+        while (t != null)
+        {
+            int compareResult = x.compareTo(t.key);
+
+            if (compareResult < 0)
+            {
+                t = t.left;
+            } else if (compareResult > 0)
+            {
+                t = t.right;
+            } else
+            {
+                return t; // Match
+            }
+        }
+        return null; // Not found
+    }
+
+    private static <AnyType> Node<AnyType> findMin(Node<AnyType> t)
+    {
+        if (t != null)
+        {
+            while (t.left != null)
+            {
+                t = t.left;
+            }
+        }
+        return t;
+    }
+
+    private static int height(Node<?> t)
+    {
+        return t == null ? -1 : t.height;
+    }
+
+    /**
+     * Internal method to build a node from subtrees whose heights differ by
+     * at most two, rotating (into new nodes) to restore the AVL condition.
+     */
+    private static <AnyType> Node<AnyType> balance(AnyType key, Copies<AnyType> copies, Node<AnyType> left, Node<AnyType> right)
+    {
+        if (height(left) - height(right) > 1)
+        {
+            if (height(left.left) >= height(left.right))
+            {
+                return new Node<>(left.key, left.copies, left.left,
+                        new Node<>(key, copies, left.right, right));
+            }
+            Node<AnyType> lr = left.right;
+            return new Node<>(lr.key, lr.copies,
+                    new Node<>(left.key, left.copies, left.left, lr.left),
+                    new Node<>(key, copies, lr.right, right));
+        } else if (height(right) - height(left) > 1)
+        {
+            if (height(right.right) >= height(right.left))
+            {
+                return new Node<>(right.key, right.copies,
+                        new Node<>(key, copies, left, right.left), right.right);
+            }
+            Node<AnyType> rl = right.left;
+            return new Node<>(rl.key, rl.copies,
+                    new Node<>(key, copies, left, rl.left),
+                    new Node<>(right.key, right.copies, rl.right, right.right));
+        }
+        return new Node<>(key, copies, left, right);
+    }
+
+    /**
+     * This is the immutable list of the copies of a key; adding or removing
+     * the first copy shares the rest.
+     */
+    private static final class Copies<AnyType>
+    {
+
+        Copies(AnyType item, Copies<AnyType> next)
+        {
+            this.item = item;
+            this.next = next;
+            this.size = (next == null) ? 1 : next.size + 1;
+        }
+
+        final AnyType item;
+        final Copies<AnyType> next;
+        final int size;
+    }
+
+    /**
+     * This is the immutable tree node. Its summary fields are computed once,
+     * from its children, when it is built.
+     */
+    private static final class Node<AnyType>
+    {
+
+        Node(AnyType key, Copies<AnyType> copies, Node<AnyType> left, Node<AnyType> right)
+        {
+            this.key = key;
+            this.copies = copies;
+            this.left = left;
+            this.right = right;
+            this.height = Math.max(height(left), height(right)) + 1;
+            this.size = 1 + (left == null ? 0 : left.size) + (right == null ? 0 : right.size);
+            this.total = copies.size + (left == null ? 0 : left.total) + (right == null ? 0 : right.total);
+            this.duplicated = (copies.size > 1 ? 1 : 0)
+                    + (left == null ? 0 : left.duplicated) + (right == null ? 0 : right.duplicated);
+        }
+
+        final AnyType key;
+        final Copies<AnyType> copies;
+        final Node<AnyType> left;
+        final Node<AnyType> right;
+        final int height;
+        final int size; // Number of distinct keys in the subtree
+        final int total; // Number of items in the subtree, counting duplicates
+        final int duplicated; // Number of keys with duplicates in the subtree
+    }
+
+    /**
+     * This is the in-order iterator over one version of the tree. The version
+     * never changes, so there is nothing to fail fast on.
+     */
+    private static final class PersistentIterator<AnyType> implements Iterator<AnyType>
+    {
+
+        @SuppressWarnings("unchecked")
+        PersistentIterator(Node<AnyType> t)
+        {
+            stack = (Node<AnyType>[]) new Node<?>[height(t) + 1];
+            pushLeft(t);
+        }
+
+        private void pushLeft(Node<AnyType> t)
+        {
+            for (; t != null; t = t.left)
+            {
+                stack[depth++] = t;
+            }
+        }
+
+        public boolean hasNext()
+        {
+            return copies != null || depth > 0;
+        }
+
+        public AnyType next()
+        {
+            if (copies == null)
+            {
+                if (depth == 0)
+                {
+                    throw new NoSuchElementException();
+                }
+                Node<AnyType> t = stack[--depth];
+                stack[depth] = null;
+                pushLeft(t.right);
+                copies = t.copies;
+            }
+
+            AnyType nextItem = copies.item;
+            copies = copies.next;
+            return nextItem;
+        }
+
+        private final Node<AnyType>[] stack;
+        private int depth = 0;
+        private Copies<AnyType> copies; // copies of the current key still to return
+    }
+
+    private final AtomicReference<Node<AnyType>> root;
+}
@@ -0,0 +1,154 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * PersistentBinarySearchTreeCheck runs random operations on a
+ * PersistentBinarySearchTree against a TreeMap model of the counts, takes
+ * snapshots along the way and checks that later changes never reach them.
+ * It also checks that concurrent writers lose no insert and that a snapshot
+ * taken while they run is consistent.
+ *
+ * Usage: java PersistentBinarySearchTreeCheck [seed]
+ */
+public class PersistentBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree(seed);
+        checkConcurrentWriters();
+
+        System.out.println("PersistentBinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts; every snapshot must keep what it saw
+    private static void checkTree(long seed) {
+        Random r = new Random(seed);
+        PersistentBinarySearchTree<Integer> tree = new PersistentBinarySearchTree<>();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+        List<PersistentBinarySearchTree<Integer>> snapshots = new ArrayList<>();
+        List<TreeMap<Integer, Integer>> snapshotModels = new ArrayList<>();
+
+        for (int step = 0; step < 10000; step++) {
+            Integer x = r.nextInt(KEYS);
+            Integer y = r.nextInt(KEYS);
+
+            switch (r.nextInt(10)) {
+                case 0:
+                    tree.remove(x);
+                    model.remove(x);
+                    break;
+                case 1:
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v == 1 ? null : v - 1);
+                    break;
+                case 2:
+                    tree.removeDuplicatesOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> 1);
+                    break;
+                case 3:
+                    tree.findAndReplaceAllDuplicates(x, y);
+                    Integer copies = model.get(x);
+                    if (!x.equals(y) && copies != null && copies > 1) {
+                        model.remove(x);
+                        model.merge(y, copies, Integer::sum);
+                    }
+                    break;
+                case 4:
+                    if (r.nextInt(50) == 0) {
+                        tree.removeAllDuplicates();
+                        model.replaceAll((k, v) -> 1);
+                    }
+                    break;
+                default:
+                    tree.insert(x);
+                    model.merge(x, 1, Integer::sum);
+                    break;
+            }
+            verify("tree", tree, model, step);
+
+            if (step % 100 == 0) {
+                snapshots.add(tree.snapshot());
+                snapshotModels.add(new TreeMap<>(model));
+            }
+        }
+
+        for (int i = 0; i < snapshots.size(); i++) {
+            verify("snapshot", snapshots.get(i), snapshotModels.get(i), i * 100);
+        }
+
+        // Changes to a snapshot do not reach the tree it was taken from either
+        PersistentBinarySearchTree<Integer> snapshot = tree.snapshot();
+        snapshot.insert(KEYS);
+        snapshot.removeAllDuplicates();
+        verify("source", tree, model, 0);
+        System.out.println("snapshots: ok");
+    }
+
+    private static void verify(String name, PersistentBinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model,
+            int step) {
+        List<Integer> expected = new ArrayList<>();
+        int duplicates = 0;
+        for (Map.Entry<Integer, Integer> e : model.entrySet()) {
+            expected.addAll(Collections.nCopies(e.getValue(), e.getKey()));
+            check(tree.numberOfDuplicates(e.getKey()) == e.getValue(), name, step, "numberOfDuplicates " + e.getKey());
+            duplicates += e.getValue() > 1 ? 1 : 0;
+        }
+        List<Integer> items = new ArrayList<>();
+        tree.forEach(items::add);
+        check(items.equals(expected), name, step, "iteration " + items);
+
+        for (int x = 0; x < KEYS; x++) {
+            check(model.containsKey(x) == (tree.find(x) != null), name, step, "find " + x);
+            check(model.containsKey(x) || tree.numberOfDuplicates(x) == 0, name, step, "numberOfDuplicates absent " + x);
+        }
+        check(tree.numberOfElements() == expected.size(), name, step, "numberOfElements");
+        check(tree.numberOfDistinctElements() == model.size(), name, step, "numberOfDistinctElements");
+        check(tree.isEmpty() == model.isEmpty(), name, step, "isEmpty");
+        if (!model.isEmpty()) {
+            check(tree.findMin().equals(model.firstKey()), name, step, "findMin");
+            check(tree.findMax().equals(model.lastKey()), name, step, "findMax");
+        }
+    }
+
+    // Writers racing on compare-and-set lose no insert; snapshots taken meanwhile match their own counts
+    private static void checkConcurrentWriters() throws Exception {
+        PersistentBinarySearchTree<Integer> tree = new PersistentBinarySearchTree<>();
+
+        Thread[] threads = Checks.hotKeyWriters(WRITERS, HOT_INSERTS, tree::insert);
+        threads[WRITERS] = new Thread(() -> {
+            for (int i = 0; i < 2000; i++) {
+                PersistentBinarySearchTree<Integer> snapshot = tree.snapshot();
+                int items = 0;
+                Integer previous = null;
+                for (Integer x : snapshot) {
+                    check(previous == null || previous <= x, "concurrent", i, "snapshot out of order");
+                    previous = x;
+                    items++;
+                }
+                check(items == snapshot.numberOfElements(), "concurrent", i, "snapshot iterated " + items
+                        + " items of " + snapshot.numberOfElements());
+                check(items == snapshot.numberOfDuplicates(1) + snapshot.numberOfDuplicates(2), "concurrent", i,
+                        "snapshot counts");
+            }
+        });
+        Checks.runAll(threads);
+
+        long expected = (long) WRITERS * HOT_INSERTS;
+        check(tree.numberOfElements() == expected, "concurrent", 0, "numberOfElements " + tree.numberOfElements());
+        check(tree.numberOfDuplicates(1) == expected / 2, "concurrent", 0, "numberOfDuplicates 1");
+        System.out.println("concurrent writers: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+    private static final int WRITERS = 8;
+    private static final int HOT_INSERTS = 20000;
+}
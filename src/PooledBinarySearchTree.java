@@ -0,0 +1,469 @@
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * PooledBinarySearchTree class implements an AVL tree with duplicates whose
+ * nodes are not objects. A node is a slot index into parallel arrays of
+ * keys, counts, children and heights, so the whole tree is a few arrays no
+ * matter how many keys it holds. The duplicates of a key are kept as a
+ * count, as in the counted mode of BinarySearchTree.
+ *
+ * The arrays grow one chunk at a time and are never copied. The balancing
+ * and the reuse of freed slots are those of SlotAvlTree.
+ */
+public class PooledBinarySearchTree<AnyType extends Comparable<? super AnyType>> extends SlotAvlTree
+{
+
+    public PooledBinarySearchTree()
+    {
+        makeEmpty();
+    }
+
+    /**
+     * Inserts one copy of x.
+     */
+    public void insert(AnyType x)
+    {
+        insert(x, 1);
+    }
+
+    /**
+     * Internal method to insert several copies of x with one descent.
+     *
+     * @param x the item to insert.
+     * @param copies the number of copies of x, at least 1.
+     */
+    private void insert(AnyType x, int copies)
+    {
+        if (root == NIL)
+        {
+            root = allocate(x, copies);
+            return;
+        }
+
+        int depth = 0;
+        int p = root;
+        while (true)
+        {
+            path[depth++] = p;
+            int compareResult = x.compareTo(key(p));
+
+            if (compareResult < 0)
+            {
+                if (left(p) == NIL)
+                {
+                    setLeft(p, allocate(x, copies));
+                    break;
+                }
+                p = left(p);
+            } else if (compareResult > 0)
+            {
+                if (right(p) == NIL)
+                {
+                    setRight(p, allocate(x, copies));
+                    break;
+                }
+                p = right(p);
+            } else
+            {
+                setCount(p, count(p) + copies);  //Duplicate
+                total += copies;
+                return;
+            }
+        }
+
+        root = rebalancePath(depth);
+    }
+
+    /**
+     * Removes x together with all its duplicates.
+     *
+     * @throws BinarySearchTree.ItemNotFoundException if x is not found.
+     */
+    public void remove(AnyType x) throws BinarySearchTree.ItemNotFoundException
+    {
+        int depth = findPath(x);
+        if (depth == 0)
+        {
+            throw new BinarySearchTree.ItemNotFoundException(x.toString());
+        }
+        removeNode(path[depth - 1], depth - 1);
+    }
+
+    /**
+     * Removes the smallest item together with all its duplicates.
+     *
+     * @throws NoSuchElementException if the tree is empty.
+     */
+    public void removeMin()
+    {
+        if (root == NIL)
+        {
+            throw new NoSuchElementException();
+        }
+
+        int depth = 0;
+        int p = root;
+        while (left(p) != NIL)
+        {
+            path[depth++] = p;
+            p = left(p);
+        }
+        removeNode(p, depth);
+    }
+
+    public AnyType findMin()
+    {
+        if (root == NIL)
+        {
+            return null;
+        }
+
+        int t = root;
+        while (left(t) != NIL)
+        {
+            t = left(t);
+        }
+        return key(t);
+    }
+
+    public AnyType findMax()
+    {
+        if (root == NIL)
+        {
+            return null;
+        }
+
+        int t = root;
+        while (right(t) != NIL)
+        {
+            t = right(t);
+        }
+        return key(t);
+    }
+
+    public AnyType find(AnyType x)
+    {
+        int t = find(x, root);
+        return t == NIL ? null : key(t);
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(AnyType x)
+    {
+        int t = find(x, root);
+        return t == NIL ? 0 : count(t);
+    }
+
+    /**
+     * Replaces all the copies of A with copies of B, if A has duplicates.
+     * A slot cannot hold another key, so the copies move to the slot of B.
+     */
+    public void findAndReplaceAllDuplicates(AnyType A, AnyType B)
+    {
+        int depth = findPath(A);
+        if (depth == 0)
+        {
+            return;
+        }
+
+        int tn = path[depth - 1];
+        int noOfDuplicates = count(tn);
+        if (noOfDuplicates <= 1)
+        {
+            return;
+        }
+
+        removeNode(tn, depth - 1);
+        insert(B, noOfDuplicates);
+    }
+
+    public void removeDuplicatesOfElement(AnyType x)
+    {
+        int t = find(x, root);
+        if (t != NIL)
+        {
+            total -= count(t) - 1;
+            setCount(t, 1);
+        }
+    }
+
+    public void removeOneDuplicateOfElement(AnyType x)
+    {
+        int depth = findPath(x);
+        if (depth != 0)
+        {
+            removeOne(depth);
+        }
+    }
+
+    public void removeAllDuplicates()
+    {
+        for (int i = 1; i < next; i++)
+        {
+            if (key(i) != null) // Skip free slots
+            {
+                setCount(i, 1);
+            }
+        }
+        total = distinct;
+    }
+
+    public boolean isEmpty()
+    {
+        return root == NIL;
+    }
+
+    /**
+     * Make the tree logically empty and release all but the first chunk.
+     */
+    public void makeEmpty()
+    {
+        keys = new Object[1][CHUNK];
+        counts = new int[1][CHUNK];
+        lefts = new int[1][CHUNK];
+        rights = new int[1][CHUNK];
+        heights = new int[1][CHUNK];
+        chunks = 1;
+        clear();
+    }
+
+    // Number of items, counting duplicates
+    public long numberOfElements()
+    {
+        return total;
+    }
+
+    public int numberOfDistinctElements()
+    {
+        return distinct;
+    }
+
+    // Number of slots the arrays can hold before growing again
+    public int capacity()
+    {
+        return chunks * CHUNK;
+    }
+
+    // Print the tree in order, all the copies included.
+    public void printInOrder()
+    {
+        printInOrder(root);
+    }
+
+    public void printDuplicates()
+    {
+        printDuplicates(root);
+    }
+
+    public void showSingleElements()
+    {
+        showSingleElements(root);
+    }
+
+    private void printInOrder(int t)
+    {
+        if (t == NIL)
+        {
+            return;
+        }
+
+        printInOrder(left(t)); // Left
+        for (int i = 0; i < count(t); i++)
+        {
+            System.out.println(key(t)); // Node
+        }
+        printInOrder(right(t)); // Right
+    }
+
+    private void printDuplicates(int t)
+    {
+        if (t == NIL)
+        {
+            return;
+        }
+
+        if (count(t) > 1)
+        {
+            System.out.println("Element " + key(t) + " repeated " + count(t) + " times!");
+        }
+        printDuplicates(left(t));
+        printDuplicates(right(t));
+    }
+
+    private void showSingleElements(int t)
+    {
+        if (t == NIL)
+        {
+            return;
+        }
+
+        if (count(t) == 1)
+        {
+            System.out.println("Element " + key(t) + " repeated " + count(t) + " time!");
+        }
+        showSingleElements(left(t));
+        showSingleElements(right(t));
+    }
+
+    private int find(AnyType x, int t)
+    {
+        while (t != NIL)
+        {
+            int compareResult = x.compareTo(key(t));
+
+            if (compareResult < 0)
+            {
+                t = left(t);
+            } else if (compareResult > 0)
+            {
+                t = right(t);
+            } else
+            {
+                return t; // Match
+            }
+        }
+        return NIL; // Not found
+    }
+
+    /**
+     * Internal method to record the path from the root down to the slot
+     * holding x.
+     *
+     * @return the number of slots recorded, the last one being the match,
+     * or 0 if x is not found.
+     */
+    private int findPath(AnyType x)
+    {
+        int depth = 0;
+        int t = root;
+        while (t != NIL)
+        {
+            path[depth++] = t;
+            int compareResult = x.compareTo(key(t));
+
+            if (compareResult < 0)
+            {
+                t = left(t);
+            } else if (compareResult > 0)
+            {
+                t = right(t);
+            } else
+            {
+                return depth; // Match
+            }
+        }
+        return 0; // Not found
+    }
+
+    private int allocate(AnyType x, int copies)
+    {
+        int t = allocate(copies);
+        setKey(t, x);
+        return t;
+    }
+
+    void reserve(int t)
+    {
+        if (t == chunks * CHUNK)
+        {
+            grow();
+        }
+    }
+
+    // Add one chunk to every array; the chunks already there stay put
+    private void grow()
+    {
+        if (chunks == keys.length)
+        {
+            int n = chunks * 2;
+            keys = Arrays.copyOf(keys, n);
+            counts = Arrays.copyOf(counts, n);
+            lefts = Arrays.copyOf(lefts, n);
+            rights = Arrays.copyOf(rights, n);
+            heights = Arrays.copyOf(heights, n);
+        }
+
+        keys[chunks] = new Object[CHUNK];
+        counts[chunks] = new int[CHUNK];
+        lefts[chunks] = new int[CHUNK];
+        rights[chunks] = new int[CHUNK];
+        heights[chunks] = new int[CHUNK];
+        chunks++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private AnyType key(int t)
+    {
+        return (AnyType) keys[t >>> SHIFT][t & MASK];
+    }
+
+    private void setKey(int t, AnyType x)
+    {
+        keys[t >>> SHIFT][t & MASK] = x;
+    }
+
+    void copyKey(int from, int to)
+    {
+        keys[to >>> SHIFT][to & MASK] = keys[from >>> SHIFT][from & MASK];
+    }
+
+    void clearKey(int t)
+    {
+        keys[t >>> SHIFT][t & MASK] = null; // Marks the slot free
+    }
+
+    int count(int t)
+    {
+        return counts[t >>> SHIFT][t & MASK];
+    }
+
+    void setCount(int t, int c)
+    {
+        counts[t >>> SHIFT][t & MASK] = c;
+    }
+
+    int left(int t)
+    {
+        return lefts[t >>> SHIFT][t & MASK];
+    }
+
+    void setLeft(int t, int l)
+    {
+        lefts[t >>> SHIFT][t & MASK] = l;
+    }
+
+    int right(int t)
+    {
+        return rights[t >>> SHIFT][t & MASK];
+    }
+
+    void setRight(int t, int r)
+    {
+        rights[t >>> SHIFT][t & MASK] = r;
+    }
+
+    int height(int t)
+    {
+        return heights[t >>> SHIFT][t & MASK];
+    }
+
+    void setHeight(int t, int h)
+    {
+        heights[t >>> SHIFT][t & MASK] = h;
+    }
+
+    private static final int SHIFT = 12;
+    private static final int CHUNK = 1 << SHIFT; // Slots per chunk
+    private static final int MASK = CHUNK - 1;
+
+    // The arrays, one chunk per row; slot t lives at [t >>> SHIFT][t & MASK]
+    private Object[][] keys;
+    private int[][] counts;
+    private int[][] lefts;
+    private int[][] rights;
+    private int[][] heights;
+    private int chunks; // Number of rows in use
+}
@@ -0,0 +1,146 @@
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * PooledBinarySearchTreeCheck runs random operations on a
+ * PooledBinarySearchTree against a TreeMap model of the counts, and checks
+ * that freed slots are reused before the arrays grow and that sorted input
+ * keeps the tree within the depth of its ancestor stack.
+ *
+ * Usage: java PooledBinarySearchTreeCheck [seed]
+ */
+public class PooledBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkTree(seed);
+        checkSlotReuse();
+        checkSortedInput();
+
+        System.out.println("PooledBinarySearchTree checks passed");
+    }
+
+    // Random operations against a model of the counts
+    private static void checkTree(long seed) throws Exception {
+        Random r = new Random(seed);
+        PooledBinarySearchTree<Integer> tree = new PooledBinarySearchTree<>();
+        TreeMap<Integer, Integer> model = new TreeMap<>();
+
+        for (int step = 0; step < 20000; step++) {
+            Integer x = r.nextInt(KEYS);
+            Integer y = r.nextInt(KEYS);
+            switch (r.nextInt(10)) {
+                case 0:
+                    try {
+                        tree.remove(x);
+                        check(model.remove(x) != null, "pooled", step, "removed absent " + x);
+                    } catch (BinarySearchTree.ItemNotFoundException ex) {
+                        check(!model.containsKey(x), "pooled", step, "could not remove " + x);
+                    }
+                    break;
+                case 1:
+                    tree.removeOneDuplicateOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> v > 1 ? v - 1 : null);
+                    break;
+                case 2:
+                    tree.removeDuplicatesOfElement(x);
+                    model.computeIfPresent(x, (k, v) -> 1);
+                    break;
+                case 3:
+                    tree.findAndReplaceAllDuplicates(x, y);
+                    Integer copies = model.get(x);
+                    if (copies != null && copies > 1) {
+                        model.remove(x);
+                        model.merge(y, copies, Integer::sum);
+                    }
+                    break;
+                case 4:
+                    try {
+                        tree.removeMin();
+                        check(model.pollFirstEntry() != null, "pooled", step, "removeMin on an empty tree");
+                    } catch (NoSuchElementException ex) {
+                        check(model.isEmpty(), "pooled", step, "removeMin failed");
+                    }
+                    break;
+                case 5:
+                    if (r.nextInt(50) == 0) {
+                        tree.removeAllDuplicates();
+                        model.replaceAll((k, v) -> 1);
+                    } else if (r.nextInt(500) == 0) {
+                        tree.makeEmpty();
+                        model.clear();
+                    }
+                    break;
+                default:
+                    tree.insert(x);
+                    model.merge(x, 1, Integer::sum);
+                    break;
+            }
+            verify(tree, model, step);
+        }
+        System.out.println("pooled: ok");
+    }
+
+    private static void verify(PooledBinarySearchTree<Integer> tree, TreeMap<Integer, Integer> model, int step) {
+        long items = 0;
+        for (int k = 0; k < KEYS; k++) {
+            int expected = model.getOrDefault(k, 0);
+            check(tree.numberOfDuplicates(k) == expected, "pooled", step, "numberOfDuplicates " + k);
+            check((tree.find(k) != null) == (expected > 0), "pooled", step, "find " + k);
+            items += expected;
+        }
+        check(tree.numberOfElements() == items, "pooled", step, "numberOfElements");
+        check(tree.numberOfDistinctElements() == model.size(), "pooled", step, "numberOfDistinctElements");
+        check(tree.isEmpty() == model.isEmpty(), "pooled", step, "isEmpty");
+        check(model.isEmpty() ? tree.findMin() == null : model.firstKey().equals(tree.findMin())
+                && model.lastKey().equals(tree.findMax()), "pooled", step, "findMin and findMax");
+    }
+
+    // Keys removed and inserted again must go back into the freed slots
+    private static void checkSlotReuse() throws Exception {
+        PooledBinarySearchTree<Integer> tree = new PooledBinarySearchTree<>();
+        for (int i = 0; i < 10000; i++) {
+            tree.insert(i);
+        }
+        int capacity = tree.capacity();
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 10000; i += 2) {
+                tree.remove(i);
+            }
+            for (int i = 0; i < 10000; i += 2) {
+                tree.insert(i);
+            }
+        }
+        check(tree.capacity() == capacity, "slots", 0, "capacity grew from " + capacity + " to " + tree.capacity());
+        check(tree.numberOfDistinctElements() == 10000, "slots", 0, "numberOfDistinctElements");
+
+        tree.makeEmpty();
+        check(tree.capacity() < capacity && tree.isEmpty(), "slots", 0, "makeEmpty kept " + tree.capacity());
+        System.out.println("slot reuse: ok");
+    }
+
+    // Sorted input must stay balanced, or the descents would overrun their ancestor stack
+    private static void checkSortedInput() throws Exception {
+        PooledBinarySearchTree<Integer> tree = new PooledBinarySearchTree<>();
+        for (int i = 0; i < 1000000; i++) {
+            tree.insert(i);
+        }
+        for (int i = 0; i < 1000000; i += 2) {
+            tree.remove(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            tree.removeMin();
+        }
+        check(tree.numberOfDistinctElements() == 499000, "sorted", 0, "numberOfDistinctElements");
+        check(tree.findMin() == 2001 && tree.findMax() == 999999, "sorted", 0, "findMin and findMax");
+        System.out.println("sorted input: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int KEYS = 64;
+}
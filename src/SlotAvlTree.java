@@ -0,0 +1,237 @@
+/**
+ * SlotAvlTree class holds the AVL logic of the trees whose nodes are slot
+ * indices rather than objects. A subclass keeps the fields of a slot in its
+ * own storage and exposes them through the accessors below, and it does the
+ * descents, which compare keys; this class balances, unlinks and recycles
+ * slots without ever seeing a key.
+ *
+ * Freed slots are kept on a free list chained through their left index and
+ * are reused by later inserts.
+ */
+abstract class SlotAvlTree
+{
+
+    /**
+     * Make the tree logically empty. The storage must already hold slot NIL.
+     */
+    void clear()
+    {
+        setHeight(NIL, -1);
+        next = NIL + 1;
+        free = NIL;
+        root = NIL;
+        distinct = 0;
+        total = 0;
+    }
+
+    /**
+     * Internal method to take a slot for a new key, from the free list if
+     * possible. The caller stores the key and links the slot in.
+     *
+     * @param copies the number of copies of the new key, at least 1.
+     * @return the slot.
+     */
+    int allocate(int copies)
+    {
+        int t = free;
+        if (t != NIL)
+        {
+            free = left(t);
+        } else
+        {
+            reserve(next);
+            t = next++;
+        }
+
+        setCount(t, copies);
+        setLeft(t, NIL);
+        setRight(t, NIL);
+        setHeight(t, 0);
+        distinct++;
+        total += copies;
+        return t;
+    }
+
+    /**
+     * Internal method to drop one copy of the key at the end of the
+     * recorded path, and the key itself if it was the last copy.
+     *
+     * @param depth the number of slots recorded in path, the last one being
+     * the key's.
+     */
+    void removeOne(int depth)
+    {
+        int t = path[depth - 1];
+        if (count(t) > 1)
+        {
+            setCount(t, count(t) - 1);
+            total--;
+        } else
+        {
+            removeNode(t, depth - 1); // Last copy, drop the key
+        }
+    }
+
+    /**
+     * Internal method to unlink a slot and all its copies, and free it.
+     *
+     * @param p the slot to unlink.
+     * @param depth the number of ancestors of p recorded in path.
+     */
+    void removeNode(int p, int depth)
+    {
+        distinct--;
+        total -= count(p);
+
+        if (left(p) != NIL && right(p) != NIL) // Two children
+        {
+            path[depth++] = p;
+            int min = right(p);
+            while (left(min) != NIL)
+            {
+                path[depth++] = min;
+                min = left(min);
+            }
+            copyKey(min, p);
+            setCount(p, count(min));
+            p = min;
+        }
+
+        int child = (left(p) != NIL) ? left(p) : right(p);
+        clearKey(p);
+        setLeft(p, free);
+        free = p;
+        if (depth == 0)
+        {
+            root = child;
+            return;
+        }
+
+        int parent = path[depth - 1];
+        if (left(parent) == p)
+        {
+            setLeft(parent, child);
+        } else
+        {
+            setRight(parent, child);
+        }
+        root = rebalancePath(depth);
+    }
+
+    /**
+     * Internal method to restore balance along the recorded path.
+     *
+     * @param depth the number of slots recorded in path.
+     * @return the new root.
+     */
+    int rebalancePath(int depth)
+    {
+        int t = NIL;
+
+        for (int i = depth - 1; i >= 0; i--)
+        {
+            int old = path[i];
+            t = balance(old);
+
+            if (i > 0)
+            {
+                int parent = path[i - 1];
+                if (left(parent) == old)
+                {
+                    setLeft(parent, t);
+                } else
+                {
+                    setRight(parent, t);
+                }
+            }
+        }
+        return t;
+    }
+
+    private void update(int t)
+    {
+        setHeight(t, Math.max(height(left(t)), height(right(t))) + 1);
+    }
+
+    private int balance(int t)
+    {
+        int l = left(t);
+        int r = right(t);
+
+        if (height(l) - height(r) > 1)
+        {
+            if (height(left(l)) < height(right(l)))
+            {
+                setLeft(t, rotateWithRightChild(l));
+            }
+            t = rotateWithLeftChild(t);
+        } else if (height(r) - height(l) > 1)
+        {
+            if (height(right(r)) < height(left(r)))
+            {
+                setRight(t, rotateWithLeftChild(r));
+            }
+            t = rotateWithRightChild(t);
+        }
+
+        update(t);
+        return t;
+    }
+
+    private int rotateWithLeftChild(int k2)
+    {
+        int k1 = left(k2);
+        setLeft(k2, right(k1));
+        setRight(k1, k2);
+        update(k2);
+        update(k1);
+        return k1;
+    }
+
+    private int rotateWithRightChild(int k1)
+    {
+        int k2 = right(k1);
+        setRight(k1, left(k2));
+        setLeft(k2, k1);
+        update(k1);
+        update(k2);
+        return k2;
+    }
+
+    // Make sure the storage holds slot t, which is one past the last slot used
+    abstract void reserve(int t);
+
+    // Copy the key of slot from into slot to
+    abstract void copyKey(int from, int to);
+
+    // Forget the key of a slot that goes on the free list
+    abstract void clearKey(int t);
+
+    abstract int count(int t);
+
+    abstract void setCount(int t, int c);
+
+    abstract int left(int t);
+
+    abstract void setLeft(int t, int l);
+
+    abstract int right(int t);
+
+    abstract void setRight(int t, int r);
+
+    abstract int height(int t);
+
+    abstract void setHeight(int t, int h);
+
+    // Slot 0 is the null child; its height is -1
+    static final int NIL = 0;
+
+    int next; // First slot never used
+    int free; // Head of the free list, NIL if empty
+    int root;
+    int distinct; // Number of keys
+    long total; // Number of items, counting duplicates
+
+    // Scratch stack of ancestors shared by the descents and removeNode
+    final int[] path = new int[BinarySearchTree.MAX_HEIGHT];
+}
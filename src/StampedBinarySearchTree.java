@@ -0,0 +1,304 @@
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * StampedBinarySearchTree class wraps a BinarySearchTree for read-heavy
+ * concurrent use. Lookups first run without locking under an optimistic
+ * StampedLock stamp and only take the read lock if a writer got in the way;
+ * updates take the write lock.
+ *
+ * In striped mode a duplicate of a key already present takes no lock at
+ * all. The thread announces itself in one of a few padded slots instead,
+ * and a writer, once it holds the write lock, waits for the slots to drain
+ * before it changes the tree.
+ */
+public class StampedBinarySearchTree<AnyType extends Comparable<? super AnyType>>
+{
+
+    public StampedBinarySearchTree()
+    {
+        this(false);
+    }
+
+    /**
+     * Construct the tree.
+     *
+     * @param counted if true, nodes keep a count instead of a list of duplicates.
+     */
+    public StampedBinarySearchTree(boolean counted)
+    {
+        this(counted, false);
+    }
+
+    /**
+     * Construct the tree.
+     *
+     * @param counted if true, nodes keep a count instead of a list of duplicates.
+     * @param striped if true, a duplicate of a key already present is added
+     * with a striped increment and no lock, so hot keys can be inserted
+     * from many threads at once. Requires counted.
+     */
+    public StampedBinarySearchTree(boolean counted, boolean striped)
+    {
+        tree = new BinarySearchTree<>(counted, striped);
+        inserting = striped ? new AtomicLongArray(SLOTS * PAD) : null;
+    }
+
+    public AnyType find(AnyType x)
+    {
+        return read(() -> tree.find(x));
+    }
+
+    /**
+     * Returns the number of copies of x, or 0 if x is not present.
+     */
+    public int numberOfDuplicates(AnyType x)
+    {
+        return read(() -> tree.numberOfDuplicates(x));
+    }
+
+    public AnyType findMin()
+    {
+        return read(tree::findMin);
+    }
+
+    public AnyType findMax()
+    {
+        return read(tree::findMax);
+    }
+
+    public boolean isEmpty()
+    {
+        return read(tree::isEmpty);
+    }
+
+    public int numberOfElements()
+    {
+        return read(tree::numberOfElements);
+    }
+
+    public void insert(AnyType x) throws LinkedList.NoSuchElementException
+    {
+        if (inserting != null && insertDuplicate(x))
+        {
+            return;
+        }
+
+        long stamp = writeLock();
+        try
+        {
+            tree.insert(x);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void insertAll(Collection<? extends AnyType> items)
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.insertAll(items);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void remove(AnyType x) throws BinarySearchTree.ItemNotFoundException, LinkedList.NoSuchElementException
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.remove(x);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void removeOneDuplicateOfElement(AnyType x) throws LinkedList.NoSuchElementException
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.removeOneDuplicateOfElement(x);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void removeDuplicatesOfElement(AnyType x) throws LinkedList.NoSuchElementException
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.removeDuplicatesOfElement(x);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    public void findAndReplaceAllDuplicates(AnyType A, AnyType B) throws LinkedList.NoSuchElementException
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.findAndReplaceAllDuplicates(A, B);
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Brings the tree-wide totals up to date with the striped duplicates.
+     */
+    public void foldStripes()
+    {
+        long stamp = writeLock();
+        try
+        {
+            tree.foldStripes();
+        } finally
+        {
+            unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Internal method to add a copy of a key already present without any
+     * lock. The thread counts itself in its slot and then checks for a
+     * writer; a writer raises its flag and then waits for every slot to
+     * drain. Both sides are volatile, so either the writer sees the slot
+     * taken and waits for the increment to land before it folds or moves
+     * the counter, or the thread sees the flag and backs out before
+     * touching the tree, to retry under the read lock. No copy is lost or
+     * counted twice.
+     *
+     * @param x the item to insert.
+     * @return false if x is not present and needs a structural insert.
+     */
+    private boolean insertDuplicate(AnyType x)
+    {
+        int slot = slot();
+        inserting.getAndIncrement(slot);
+        try
+        {
+            if (!writing)
+            {
+                return tree.insertDuplicate(x);
+            }
+        } finally
+        {
+            inserting.getAndDecrement(slot);
+        }
+
+        long stamp = lock.readLock(); // A writer is in, wait for it
+        try
+        {
+            return tree.insertDuplicate(x);
+        } finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Internal method to take the write lock and, in striped mode, wait for
+     * the lock-free inserts already running to finish.
+     *
+     * @return the stamp to pass to unlockWrite.
+     */
+    private long writeLock()
+    {
+        long stamp = lock.writeLock();
+        if (inserting != null)
+        {
+            writing = true;
+            for (int i = 0; i < SLOTS * PAD; i += PAD)
+            {
+                for (int spins = 0; inserting.get(i) != 0; spins++)
+                {
+                    if (spins < SPINS)
+                    {
+                        Thread.onSpinWait();
+                    } else
+                    {
+                        Thread.yield(); // The inserter may be descheduled
+                    }
+                }
+            }
+        }
+        return stamp;
+    }
+
+    private void unlockWrite(long stamp)
+    {
+        writing = false;
+        lock.unlockWrite(stamp);
+    }
+
+    // Index of the calling thread's slot in inserting
+    private static int slot()
+    {
+        int h = System.identityHashCode(Thread.currentThread());
+        return ((h ^ (h >>> 16)) & (SLOTS - 1)) * PAD;
+    }
+
+    /**
+     * Internal method to run a lookup, optimistically first.
+     * A lookup racing with a writer may see a half-rotated tree and fail,
+     * or find a cycle; the tree's lookups give up after MAX_HEIGHT levels,
+     * so that ends in a failure too. The failure is discarded along with
+     * the stamp and the lookup is run again under the read lock.
+     *
+     * @param lookup the read-only operation on the tree.
+     * @return the result of the lookup.
+     */
+    private <T> T read(Supplier<T> lookup)
+    {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L)
+        {
+            try
+            {
+                T result = lookup.get();
+                if (lock.validate(stamp))
+                {
+                    return result;
+                }
+            } catch (RuntimeException ex)
+            {
+                // Torn read, retried below
+            }
+        }
+
+        stamp = lock.readLock();
+        try
+        {
+            return lookup.get();
+        } finally
+        {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // Slots for lock-free inserts, a power of two; PAD longs apart so that
+    // two slots never share a cache line
+    private static final int SLOTS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2;
+    private static final int PAD = 16;
+    private static final int SPINS = 64;
+
+    private final BinarySearchTree<AnyType> tree;
+    private final StampedLock lock = new StampedLock();
+
+    // Lock-free inserts running, per slot; null unless striped
+    private final AtomicLongArray inserting;
+    private volatile boolean writing; // Set while a writer holds the lock
+}
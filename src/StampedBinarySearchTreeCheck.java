@@ -0,0 +1,153 @@
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * StampedBinarySearchTreeCheck runs writers against a StampedBinarySearchTree
+ * while readers run optimistic lookups on it. Every writer inserts copies of
+ * shared keys and also inserts, removes and replaces keys of its own, so the
+ * final counts are known exactly. Readers check that no lookup returns a torn
+ * result. In striped mode it also moves the copies of two hot keys back and
+ * forth while lock-free inserts add to both, and checks that none is lost.
+ *
+ * Usage: java StampedBinarySearchTreeCheck [seed]
+ */
+public class StampedBinarySearchTreeCheck {
+
+    public static void main(String[] args) throws Exception {
+        long seed = args.length > 0 ? Long.parseLong(args[0]) : 1;
+
+        checkCounts("list", false, false, seed);
+        checkCounts("counted", true, false, seed);
+        checkCounts("striped", true, true, seed);
+        checkStripedReplace();
+
+        System.out.println("StampedBinarySearchTree checks passed");
+    }
+
+    // Writers change the tree while readers run lookups on it; the counts must add up at the end
+    private static void checkCounts(String name, boolean counted, boolean striped, long seed) throws Exception {
+        StampedBinarySearchTree<Integer> tree = new StampedBinarySearchTree<>(counted, striped);
+        long[][] inserted = new long[WRITERS][SHARED];
+        @SuppressWarnings("unchecked")
+        TreeMap<Integer, Integer>[] own = (TreeMap<Integer, Integer>[]) new TreeMap<?, ?>[WRITERS];
+        AtomicLong lookups = new AtomicLong();
+
+        Thread[] threads = new Thread[WRITERS + READERS];
+        for (int w = 0; w < WRITERS; w++) {
+            final int id = w;
+            own[id] = new TreeMap<>();
+            threads[w] = new Thread(() -> {
+                Random r = new Random(seed + id);
+                int base = SHARED + id * OWN; // Keys only this writer removes
+                try {
+                    for (int i = 0; i < 50000; i++) {
+                        int x = base + r.nextInt(OWN);
+                        switch (r.nextInt(8)) {
+                            case 0:
+                                tree.removeOneDuplicateOfElement(x);
+                                own[id].computeIfPresent(x, (k, v) -> v == 1 ? null : v - 1);
+                                break;
+                            case 1:
+                                tree.removeDuplicatesOfElement(x);
+                                own[id].computeIfPresent(x, (k, v) -> 1); // One copy stays
+                                break;
+                            case 2:
+                                int y = base + r.nextInt(OWN);
+                                tree.findAndReplaceAllDuplicates(x, y);
+                                Integer copies = own[id].get(x);
+                                if (x != y && copies != null && copies > 1) {
+                                    own[id].remove(x);
+                                    own[id].merge(y, copies, Integer::sum);
+                                }
+                                break;
+                            case 3:
+                                tree.insert(x);
+                                own[id].merge(x, 1, Integer::sum);
+                                break;
+                            default:
+                                x = r.nextInt(2) == 0 ? r.nextInt(4) : r.nextInt(SHARED); // Mostly hot keys
+                                tree.insert(x);
+                                inserted[id][x]++;
+                                break;
+                        }
+                    }
+                } catch (LinkedList.NoSuchElementException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+        }
+        for (int i = WRITERS; i < threads.length; i++) {
+            final int id = i;
+            threads[i] = new Thread(() -> {
+                Random r = new Random(seed + id);
+                for (int j = 0; j < 200000; j++) {
+                    int x = r.nextInt(SHARED + WRITERS * OWN);
+                    int copies = tree.numberOfDuplicates(x);
+                    check(copies >= 0, name, j, "numberOfDuplicates " + x + " = " + copies);
+                    Integer found = tree.find(x);
+                    check(found == null || found == x, name, j, "find " + x + " returned " + found);
+                    lookups.addAndGet(copies);
+                }
+            });
+        }
+        Checks.runAll(threads);
+
+        long items = 0;
+        for (int x = 0; x < SHARED; x++) {
+            long expected = 0;
+            for (int w = 0; w < WRITERS; w++) {
+                expected += inserted[w][x];
+            }
+            check(tree.numberOfDuplicates(x) == expected, name, 0, "numberOfDuplicates " + x);
+            items += expected;
+        }
+        for (int w = 0; w < WRITERS; w++) {
+            for (int x = SHARED + w * OWN; x < SHARED + (w + 1) * OWN; x++) {
+                int expected = own[w].getOrDefault(x, 0);
+                check(tree.numberOfDuplicates(x) == expected, name, 0, "numberOfDuplicates " + x);
+                items += expected;
+            }
+        }
+        check(tree.numberOfElements() == items, name, 0, "numberOfElements");
+        check(tree.findMin() == 0 && tree.findMax() >= SHARED - 1, name, 0, "findMin/findMax");
+        System.out.println(name + ": ok, " + lookups.get() + " copies seen by readers");
+    }
+
+    // Striped inserts racing with writers that fold and move the counters
+    private static void checkStripedReplace() throws Exception {
+        for (int run = 0; run < 10; run++) {
+            StampedBinarySearchTree<Integer> tree = new StampedBinarySearchTree<>(true, true);
+            tree.insert(1);
+            tree.insert(1);
+
+            Thread[] threads = Checks.hotKeyWriters(WRITERS, HOT_INSERTS, tree::insert);
+            threads[WRITERS] = new Thread(() -> {
+                try {
+                    for (int i = 0; i < 2000; i++) {
+                        tree.findAndReplaceAllDuplicates(i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1);
+                    }
+                } catch (LinkedList.NoSuchElementException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            Checks.runAll(threads);
+
+            long expected = 2 + (long) WRITERS * HOT_INSERTS;
+            long copies = tree.numberOfDuplicates(1) + tree.numberOfDuplicates(2);
+            check(copies == expected, "striped replace", run, "copies of 1 and 2: " + copies + ", expected " + expected);
+            check(tree.numberOfElements() == expected, "striped replace", run, "numberOfElements");
+        }
+        System.out.println("striped replace: ok");
+    }
+
+    private static void check(boolean condition, String name, int step, String what) {
+        Checks.check(condition, name, step, what);
+    }
+
+    private static final int SHARED = 1024;
+    private static final int OWN = 64;
+    private static final int WRITERS = 8;
+    private static final int READERS = 2;
+    private static final int HOT_INSERTS = 20000;
+}
@@ -0,0 +1,211 @@
+/**
+ * TreeFootprint class is the report returned by BinarySearchTree.footprint:
+ * the shape of the tree, how its duplicates are spread over the nodes, and
+ * an estimate of the heap the tree retains, broken down by kind of object.
+ *
+ * Byte counts assume a 64-bit JVM with compressed references: 12-byte object
+ * headers, 4-byte references and objects padded to 8 bytes. Keys are sized
+ * by type for the boxed primitives and Latin-1 strings, and as bare objects
+ * otherwise, so the key figure is a lower bound for other key types.
+ */
+public class TreeFootprint
+{
+
+    TreeFootprint(int height)
+    {
+        this.height = height;
+    }
+
+    /**
+     * Internal method to account for one node.
+     *
+     * @param key the key of the node.
+     * @param bucket the duplicates of the key, or null if the node is counted.
+     * @param striped true if the node has striped counters.
+     * @param copies the number of copies of its key.
+     * @param depth the depth of the node, 0 for the root.
+     */
+    void add(Object key, DuplicateBucket<?> bucket, boolean striped, int copies, int depth)
+    {
+        nodes++;
+        items += copies;
+        depthSum += depth;
+        maxDepth = Math.max(maxDepth, depth);
+        histogram[32 - Integer.numberOfLeadingZeros(copies)]++;
+
+        nodeBytes += NODE;
+        keyBytes += keyBytes(key);
+        if (striped)
+        {
+            stripeBytes += LONG_ADDER;
+        }
+
+        if (bucket instanceof LinkedList)
+        {
+            bucketBytes += LINKED_LIST;
+            entryBytes += (long) (bucket.size() + 2) * LIST_NODE; // Two markers
+
+            int values = ((LinkedList<?>) bucket).indexedValues();
+            if (values >= 0)
+            {
+                int table = Math.max(16, Integer.highestOneBit(Math.max(1, values * 4 / 3)) * 2);
+                bucketBytes += HASH_MAP + align(ARRAY_HEADER + 4L * table) + (long) values * (HASH_ENTRY + OCCURRENCES);
+            }
+        } else if (bucket instanceof ArrayBucket)
+        {
+            int capacity = ((ArrayBucket<?>) bucket).capacity();
+            bucketBytes += ARRAY_BUCKET + (capacity == 0 ? 0 : align(ARRAY_HEADER + 4L * capacity));
+        }
+
+        if (bucket != null)
+        {
+            for (Object x : bucket)
+            {
+                if (x != key) // The key itself is counted once
+                {
+                    keyBytes += keyBytes(x);
+                }
+            }
+        }
+    }
+
+    // Number of nodes, one per distinct key
+    public int nodes()
+    {
+        return nodes;
+    }
+
+    // Number of items, counting duplicates
+    public long items()
+    {
+        return items;
+    }
+
+    // Height of the tree; -1 if empty
+    public int height()
+    {
+        return height;
+    }
+
+    public int maxDepth()
+    {
+        return maxDepth;
+    }
+
+    public double averageDepth()
+    {
+        return nodes == 0 ? 0 : (double) depthSum / nodes;
+    }
+
+    /**
+     * Returns the number of nodes by number of copies. Entry 0 counts the
+     * nodes with no copies, and entry k > 0 those with 2^(k-1) to 2^k - 1
+     * copies: entry 1 counts the keys without duplicates.
+     */
+    public long[] bucketSizeHistogram()
+    {
+        return histogram.clone();
+    }
+
+    // Estimated bytes of the tree nodes
+    public long nodeBytes()
+    {
+        return nodeBytes;
+    }
+
+    // Estimated bytes of the duplicate containers, LinkedList with its index or ArrayBucket
+    public long bucketBytes()
+    {
+        return bucketBytes;
+    }
+
+    // Estimated bytes of the LinkedList.Node entries, markers included
+    public long entryBytes()
+    {
+        return entryBytes;
+    }
+
+    // Estimated bytes of the striped counters
+    public long stripeBytes()
+    {
+        return stripeBytes;
+    }
+
+    // Estimated bytes of the keys and of the distinct duplicates
+    public long keyBytes()
+    {
+        return keyBytes;
+    }
+
+    public long totalBytes()
+    {
+        return nodeBytes + bucketBytes + entryBytes + stripeBytes + keyBytes;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("nodes: ").append(nodes).append("; items: ").append(items).append('\n');
+        sb.append("height: ").append(height).append("; max depth: ").append(maxDepth)
+                .append("; average depth: ").append(String.format("%.2f", averageDepth())).append('\n');
+
+        sb.append("copies per key:\n");
+        for (int k = 0; k < histogram.length; k++)
+        {
+            if (histogram[k] != 0)
+            {
+                long low = k == 0 ? 0 : 1L << (k - 1);
+                long high = k == 0 ? 0 : (1L << k) - 1;
+                sb.append("  ").append(low == high ? Long.toString(low) : low + "-" + high)
+                        .append(": ").append(histogram[k]).append('\n');
+            }
+        }
+
+        sb.append("bytes: nodes ").append(nodeBytes).append(", buckets ").append(bucketBytes)
+                .append(", entries ").append(entryBytes).append(", stripes ").append(stripeBytes)
+                .append(", keys ").append(keyBytes).append(", total ").append(totalBytes());
+        return sb.toString();
+    }
+
+    // Estimated size of one key object
+    private static long keyBytes(Object x)
+    {
+        if (x instanceof Long || x instanceof Double)
+        {
+            return 24;
+        } else if (x instanceof String)
+        {
+            return 24 + align(ARRAY_HEADER + ((String) x).length());
+        }
+        return 16; // Integer, Short, Character, ... or a bare object
+    }
+
+    private static long align(long bytes)
+    {
+        return (bytes + 7) & ~7L;
+    }
+
+    // Estimated object sizes, in bytes
+    private static final long NODE = 56; // BinaryNode: 5 references, 5 ints
+    private static final long LINKED_LIST = 56; // 5 references, 4 ints, a boolean
+    private static final long HASH_MAP = 48; // The index of a LinkedList, without its table
+    private static final long HASH_ENTRY = 32; // HashMap.Node
+    private static final long OCCURRENCES = 24; // LinkedList.Occurrences
+    private static final long LIST_NODE = 24; // LinkedList.Node: 3 references
+    private static final long ARRAY_BUCKET = 32; // 2 references, 3 ints
+    private static final long ARRAY_HEADER = 16;
+    private static final long LONG_ADDER = 32; // Without its cells, made only under contention
+
+    private final int height;
+    private int nodes = 0;
+    private long items = 0;
+    private int maxDepth = 0;
+    private long depthSum = 0;
+    private final long[] histogram = new long[33];
+
+    private long nodeBytes = 0;
+    private long bucketBytes = 0;
+    private long entryBytes = 0;
+    private long stripeBytes = 0;
+    private long keyBytes = 0;
+}